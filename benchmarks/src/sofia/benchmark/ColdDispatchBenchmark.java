@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2011 Virginia Tech Department of Computer Science
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package sofia.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sofia.internal.events.EventDispatcher;
+import sofia.internal.events.OptionalEventDispatcher;
+import sofia.internal.events.ReversibleEventDispatcher;
+import sofia.internal.events.TouchDispatcher;
+import android.view.MotionEvent;
+
+//-------------------------------------------------------------------------
+/**
+ * <p>
+ * Measures the first dispatch to a receiver, which resolves its handler.
+ * Before each measured call, the shared dispatch caches are cleared and new
+ * dispatchers are created, so that no resolution is reused. The reflective
+ * index of each receiver class stays warm, as it would after the first
+ * screen of an application has been shown.
+ * </p><p>
+ * Each measurement is a single call, so the scores are the distribution of
+ * single-call latencies across iterations. {@link TouchDispatcher}'s
+ * dispatchers are static, so its cold measurement keeps their inline
+ * caches and only loses the shared ones.
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2000)
+@Measurement(iterations = 2000)
+@Fork(3)
+public class ColdDispatchBenchmark
+{
+    //~ Fields ................................................................
+
+    private final Receivers.Base receiver = new Receivers.R0();
+
+    private EventDispatcher valueChanged;
+    private EventDispatcher itemClicked;
+    private EventDispatcher valuesSwapped;
+
+    private final Object[] valueArgs = { "source", 42 };
+    private final Object[] itemArgs = { "item", 7 };
+    private final MotionEvent move =
+            MotionEvent.obtain(0, 0, MotionEvent.ACTION_MOVE, 10, 20, 0);
+
+
+    //~ Public methods ........................................................
+
+    // ----------------------------------------------------------
+    @Setup(Level.Iteration)
+    public void clearCaches()
+    {
+        EventDispatcher.clearCaches();
+
+        valueChanged = new EventDispatcher("valueChanged");
+        itemClicked = new OptionalEventDispatcher("itemClicked", 1);
+        valuesSwapped = new ReversibleEventDispatcher("valuesSwapped");
+    }
+
+
+    // ----------------------------------------------------------
+    @Benchmark
+    public boolean dispatch()
+    {
+        return valueChanged.dispatch(receiver, valueArgs);
+    }
+
+
+    // ----------------------------------------------------------
+    @Benchmark
+    public boolean optionalTrimmed()
+    {
+        return itemClicked.dispatch(receiver, itemArgs);
+    }
+
+
+    // ----------------------------------------------------------
+    @Benchmark
+    public boolean reversible()
+    {
+        return valuesSwapped.dispatch(receiver, valueArgs);
+    }
+
+
+    // ----------------------------------------------------------
+    @Benchmark
+    public long touchMove()
+    {
+        TouchDispatcher.dispatchTo(receiver, move);
+        return receiver.total;
+    }
+}
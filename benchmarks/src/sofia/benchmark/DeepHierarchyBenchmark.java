@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2011 Virginia Tech Department of Computer Science
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package sofia.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sofia.internal.events.EventDispatcher;
+
+//-------------------------------------------------------------------------
+/**
+ * <p>
+ * Measures resolving a handler with many overloads for arguments whose
+ * classes sit at the bottom of a deep hierarchy, which is where scoring
+ * the overloads costs the most: each candidate parameter is reached by
+ * walking up through superclasses and interfaces.
+ * </p><p>
+ * Both benchmarks resolve a handler that has not been resolved before.
+ * {@code costsCold} does so right after the shared caches are cleared, so
+ * every conversion cost is computed. {@code costsWarm} first resolves a
+ * handler with the same overloads under a different name, so the
+ * resolution misses but the conversion costs are already in the table.
+ * The difference between the two is what the table saves.
+ * </p><p>
+ * The caches are reset before every call, with a per-invocation setup.
+ * JMH cautions against that for calls of a few nanoseconds, but a
+ * resolution takes microseconds, so the timing overhead is small beside it.
+ * </p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(3)
+public class DeepHierarchyBenchmark
+{
+    //~ Public methods ........................................................
+
+    // ----------------------------------------------------------
+    @Benchmark
+    public boolean costsCold(ColdState state)
+    {
+        return state.shapeChanged.dispatch(state.receiver, state.args);
+    }
+
+
+    // ----------------------------------------------------------
+    @Benchmark
+    public boolean costsWarm(WarmState state)
+    {
+        return state.shapeMoved.dispatch(state.receiver, state.args);
+    }
+
+
+    //~ Nested classes ........................................................
+
+    // ----------------------------------------------------------
+    /**
+     * Clears the shared caches before each measured call.
+     */
+    @State(Scope.Thread)
+    public static class ColdState
+    {
+        final Receiver receiver = new Receiver();
+        final Object[] args = { new H15(), new H13() };
+        EventDispatcher shapeChanged;
+
+
+        // ----------------------------------------------------------
+        @Setup(Level.Invocation)
+        public void clearCaches()
+        {
+            EventDispatcher.clearCaches();
+            shapeChanged = new EventDispatcher("shapeChanged");
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Clears the shared caches before each measured call, then fills the
+     * conversion cost table by resolving {@code shapeChanged}.
+     */
+    @State(Scope.Thread)
+    public static class WarmState
+    {
+        final Receiver receiver = new Receiver();
+        final Object[] args = { new H15(), new H13() };
+        EventDispatcher shapeMoved;
+
+
+        // ----------------------------------------------------------
+        @Setup(Level.Invocation)
+        public void clearCaches()
+        {
+            EventDispatcher.clearCaches();
+            new EventDispatcher("shapeChanged").dispatch(receiver, args);
+            shapeMoved = new EventDispatcher("shapeMoved");
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Handlers with the same overloads under two names, none of which
+     * exactly matches the arguments.
+     */
+    public static class Receiver
+    {
+        public long total;
+
+        public void shapeChanged(Object a, Object b)  { total += 1; }
+        public void shapeChanged(H0 a, H0 b)          { total += 2; }
+        public void shapeChanged(H4 a, H0 b)          { total += 3; }
+        public void shapeChanged(H8 a, H4 b)          { total += 4; }
+        public void shapeChanged(H12 a, H8 b)         { total += 5; }
+        public void shapeChanged(Tagged a, H12 b)     { total += 6; }
+        public void shapeChanged(Sized a, Tagged b)   { total += 7; }
+        public void shapeChanged(H14 a, Sized b)      { total += 8; }
+
+        public void shapeMoved(Object a, Object b)    { total += 1; }
+        public void shapeMoved(H0 a, H0 b)            { total += 2; }
+        public void shapeMoved(H4 a, H0 b)            { total += 3; }
+        public void shapeMoved(H8 a, H4 b)            { total += 4; }
+        public void shapeMoved(H12 a, H8 b)           { total += 5; }
+        public void shapeMoved(Tagged a, H12 b)       { total += 6; }
+        public void shapeMoved(Sized a, Tagged b)     { total += 7; }
+        public void shapeMoved(H14 a, Sized b)        { total += 8; }
+    }
+
+
+    // A sixteen-level hierarchy, with interfaces part of the way down.
+    public static interface Tagged { }
+    public static interface Sized extends Tagged { }
+
+    public static class H0 { }
+    public static class H1 extends H0 { }
+    public static class H2 extends H1 { }
+    public static class H3 extends H2 implements Tagged { }
+    public static class H4 extends H3 { }
+    public static class H5 extends H4 { }
+    public static class H6 extends H5 { }
+    public static class H7 extends H6 { }
+    public static class H8 extends H7 implements Sized { }
+    public static class H9 extends H8 { }
+    public static class H10 extends H9 { }
+    public static class H11 extends H10 { }
+    public static class H12 extends H11 { }
+    public static class H13 extends H12 { }
+    public static class H14 extends H13 { }
+    public static class H15 extends H14 { }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2011 Virginia Tech Department of Computer Science
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package sofia.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sofia.internal.events.EventDispatcher;
+import sofia.internal.events.OptionalEventDispatcher;
+import sofia.internal.events.ReversibleEventDispatcher;
+import sofia.internal.events.TouchDispatcher;
+import android.view.MotionEvent;
+
+//-------------------------------------------------------------------------
+/**
+ * <p>
+ * Measures dispatch once every handler has been resolved. With one receiver
+ * class, each call site is monomorphic and every event is found in the
+ * dispatcher's inline cache. With four, the inline cache is full but still
+ * holds every class; with eight, it overflows and most events are found in
+ * the shared cache instead.
+ * </p><p>
+ * Run with {@code -prof gc} to report the allocation rate alongside
+ * throughput and the latency percentiles.
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DispatchBenchmark
+{
+    //~ Fields ................................................................
+
+    /** The number of distinct receiver classes that events alternate over. */
+    @Param({ "1", "4", "8" })
+    public int receiverClasses;
+
+    private Receivers.Base[] receivers;
+    private int next;
+
+    private final EventDispatcher valueChanged =
+            new EventDispatcher("valueChanged");
+    private final EventDispatcher itemClicked =
+            new OptionalEventDispatcher("itemClicked", 1);
+    private final EventDispatcher valuesSwapped =
+            new ReversibleEventDispatcher("valuesSwapped");
+
+    // Built once, so that the benchmarks measure dispatch rather than the
+    // caller's varargs array and boxing.
+    private final Object[] valueArgs = { "source", 42 };
+    private final Object[] itemArgs = { "item", 7 };
+    private final MotionEvent move =
+            MotionEvent.obtain(0, 0, MotionEvent.ACTION_MOVE, 10, 20, 0);
+
+
+    //~ Public methods ........................................................
+
+    // ----------------------------------------------------------
+    @Setup
+    public void setUp()
+    {
+        receivers = Receivers.create(receiverClasses);
+    }
+
+
+    // ----------------------------------------------------------
+    @Benchmark
+    public boolean dispatch()
+    {
+        return valueChanged.dispatch(nextReceiver(), valueArgs);
+    }
+
+
+    // ----------------------------------------------------------
+    @Benchmark
+    public boolean optionalTrimmed()
+    {
+        return itemClicked.dispatch(nextReceiver(), itemArgs);
+    }
+
+
+    // ----------------------------------------------------------
+    @Benchmark
+    public boolean reversible()
+    {
+        return valuesSwapped.dispatch(nextReceiver(), valueArgs);
+    }
+
+
+    // ----------------------------------------------------------
+    @Benchmark
+    public long touchMove()
+    {
+        Receivers.Base receiver = nextReceiver();
+        TouchDispatcher.dispatchTo(receiver, move);
+        return receiver.total;
+    }
+
+
+    //~ Private methods .......................................................
+
+    // ----------------------------------------------------------
+    private Receivers.Base nextReceiver()
+    {
+        Receivers.Base receiver = receivers[next];
+        next = (next + 1 == receivers.length) ? 0 : next + 1;
+        return receiver;
+    }
+}
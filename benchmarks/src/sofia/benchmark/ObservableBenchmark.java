@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2011 Virginia Tech Department of Computer Science
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package sofia.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sofia.util.Observable;
+
+//-------------------------------------------------------------------------
+/**
+ * <p>
+ * Measures {@link Observable#notifyObservers(Object...)} with 1, 10, or 100
+ * observers, notifying as fast as possible. Each observer has overloads
+ * of {@code changeWasObserved} with and without an argument, so a
+ * notification with an argument resolves to the longer one and one
+ * without resolves to the shorter one.
+ * </p><p>
+ * {@code notifyShared} notifies one observable from four threads at once,
+ * which shows whether notifications contend with each other. Run with
+ * {@code -prof gc} to see whether a notification allocates; a notification
+ * with an argument allocates the varargs array at the call site, and should
+ * allocate nothing more however many observers there are.
+ * </p>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ObservableBenchmark
+{
+    //~ Public methods ........................................................
+
+    // ----------------------------------------------------------
+    @Benchmark
+    public long notifyNoArguments(Subject subject)
+    {
+        subject.notifyObservers();
+        return subject.total();
+    }
+
+
+    // ----------------------------------------------------------
+    @Benchmark
+    public long notifyWithArgument(Subject subject)
+    {
+        subject.notifyObservers(subject.argument);
+        return subject.total();
+    }
+
+
+    // ----------------------------------------------------------
+    @Benchmark
+    @Threads(4)
+    public void notifyShared(SharedSubject subject)
+    {
+        subject.notifyObservers(subject.argument);
+    }
+
+
+    //~ Nested classes ........................................................
+
+    // ----------------------------------------------------------
+    /**
+     * An observable with a number of observers, used by one thread.
+     */
+    @State(Scope.Thread)
+    public static class Subject
+        extends Observable
+    {
+        @Param({ "1", "10", "100" })
+        public int observerCount;
+
+        final Integer argument = 1000;
+        private Counter[] counters;
+
+
+        // ----------------------------------------------------------
+        @Setup
+        public void addObservers()
+        {
+            counters = new Counter[observerCount];
+
+            for (int i = 0; i < observerCount; i++)
+            {
+                counters[i] = new Counter();
+                addObserver(counters[i]);
+            }
+        }
+
+
+        // ----------------------------------------------------------
+        long total()
+        {
+            return counters[0].total;
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * An observable with a number of observers, shared by every thread.
+     */
+    @State(Scope.Benchmark)
+    public static class SharedSubject
+        extends Subject
+    {
+        // Nothing to add; only the scope differs.
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * An observer that counts its notifications. The count is not
+     * synchronized, since only its cost matters here.
+     */
+    public static class Counter
+    {
+        public long total;
+
+        // ----------------------------------------------------------
+        public void changeWasObserved(Observable observable)
+        {
+            total++;
+        }
+
+
+        // ----------------------------------------------------------
+        public void changeWasObserved(Observable observable, Integer value)
+        {
+            total += value;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2011 Virginia Tech Department of Computer Science
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package sofia.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sofia.internal.events.MethodInvoker;
+import sofia.internal.events.OptionalEventDispatcher;
+
+//-------------------------------------------------------------------------
+/**
+ * <p>
+ * Compares delivering SeekBar and RatingBar changes by dispatching a boxed
+ * argument array, as EventBinder used to, with calling the resolved
+ * invoker's primitive entry point, as it does now. Progress values cycle
+ * through 0-999, so that most fall outside Integer's box cache, as they do
+ * for a SeekBar with a large maximum.
+ * </p><p>
+ * The receiver parameter selects a class whose handlers are called through
+ * reflection, where the primitive entry points still box (but reuse their
+ * argument array), or one with a generated dispatch table, where they pass
+ * the values straight through. Run with {@code -prof gc} to see the
+ * allocation rate of each.
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PrimitiveArgumentBenchmark
+{
+    //~ Fields ................................................................
+
+    /** Whether the receiver's handlers are reflective or generated. */
+    @Param({ "reflective", "generated" })
+    public String receiverKind;
+
+    private Object receiver;
+    private final Object bar = new Object();
+
+    private final OptionalEventDispatcher progressChanged =
+            new OptionalEventDispatcher("barProgressChanged", 0);
+    private final OptionalEventDispatcher ratingChanged =
+            new OptionalEventDispatcher("barRatingChanged", 0);
+
+    private final Object[] changedArgs = new Object[3];
+    private MethodInvoker progressInvoker;
+    private MethodInvoker ratingInvoker;
+    private int progress;
+
+
+    //~ Public methods ........................................................
+
+    // ----------------------------------------------------------
+    @Setup
+    public void setUp()
+    {
+        receiver = "generated".equals(receiverKind)
+                ? new TabledChangeReceiver() : new ChangeReceiver();
+
+        progressInvoker = progressChanged.resolveInvoker(receiver,
+                Object.class, Integer.class, Boolean.class);
+        ratingInvoker = ratingChanged.resolveInvoker(receiver,
+                Object.class, Float.class, Boolean.class);
+    }
+
+
+    // ----------------------------------------------------------
+    @Benchmark
+    public boolean progressBoxed()
+    {
+        changedArgs[0] = bar;
+        changedArgs[1] = nextProgress();
+        changedArgs[2] = true;
+        return progressChanged.dispatch(receiver, changedArgs);
+    }
+
+
+    // ----------------------------------------------------------
+    @Benchmark
+    public Object progressPrimitive()
+    {
+        return progressInvoker.invokeIntBoolean(
+                receiver, bar, nextProgress(), true);
+    }
+
+
+    // ----------------------------------------------------------
+    @Benchmark
+    public boolean ratingBoxed()
+    {
+        changedArgs[0] = bar;
+        changedArgs[1] = nextProgress() / 200f;
+        changedArgs[2] = true;
+        return ratingChanged.dispatch(receiver, changedArgs);
+    }
+
+
+    // ----------------------------------------------------------
+    @Benchmark
+    public Object ratingPrimitive()
+    {
+        return ratingInvoker.invokeFloatBoolean(
+                receiver, bar, nextProgress() / 200f, true);
+    }
+
+
+    //~ Private methods .......................................................
+
+    // ----------------------------------------------------------
+    private int nextProgress()
+    {
+        progress = (progress + 1 == 1000) ? 0 : progress + 1;
+        return progress;
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2011 Virginia Tech Department of Computer Science
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package sofia.benchmark;
+
+//-------------------------------------------------------------------------
+/**
+ * Event receivers for the dispatch benchmarks. Every receiver class has the
+ * same handlers, inherited from {@link Base}, so that a benchmark can spread
+ * its events over several receiver classes to measure dispatch to a
+ * polymorphic call site without changing which handlers are called.
+ */
+public class Receivers
+{
+    //~ Constructors ..........................................................
+
+    // ----------------------------------------------------------
+    private Receivers()
+    {
+        // Use create().
+    }
+
+
+    //~ Public methods ........................................................
+
+    // ----------------------------------------------------------
+    /**
+     * Creates receivers of the specified number of distinct classes.
+     *
+     * @param classes the number of receiver classes, from 1 to 8
+     * @return one receiver of each class
+     */
+    public static Base[] create(int classes)
+    {
+        Base[] all = {
+            new R0(), new R1(), new R2(), new R3(),
+            new R4(), new R5(), new R6(), new R7()
+        };
+
+        if (classes < 1 || classes > all.length)
+        {
+            throw new IllegalArgumentException(
+                    "classes must be between 1 and 8: " + classes);
+        }
+
+        Base[] receivers = new Base[classes];
+        System.arraycopy(all, 0, receivers, 0, classes);
+        return receivers;
+    }
+
+
+    //~ Inner classes .........................................................
+
+    // ----------------------------------------------------------
+    /**
+     * The handlers that the benchmarks dispatch to. Each one updates
+     * {@link #total}, so that the JIT cannot remove the calls.
+     */
+    public abstract static class Base
+    {
+        public long total;
+
+
+        // ----------------------------------------------------------
+        /**
+         * Called by a plain {@code EventDispatcher} with a String and an
+         * Integer, which is unboxed into the int parameter.
+         */
+        public void valueChanged(String source, int value)
+        {
+            total += value;
+        }
+
+
+        // ----------------------------------------------------------
+        /**
+         * Called by an {@code OptionalEventDispatcher} that is given an item
+         * and its position, so the trailing position is trimmed.
+         */
+        public void itemClicked(Object item)
+        {
+            total++;
+        }
+
+
+        // ----------------------------------------------------------
+        /**
+         * Called by a {@code ReversibleEventDispatcher} that is given a
+         * String and an Integer, so only the reversed order matches.
+         */
+        public void valuesSwapped(Integer value, String source)
+        {
+            total += value;
+        }
+
+
+        // ----------------------------------------------------------
+        /**
+         * Called by {@code TouchDispatcher} for every move event.
+         */
+        public void onTouchMove(float x, float y)
+        {
+            total += (long) x;
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    public static final class R0 extends Base { /* no additions */ }
+    public static final class R1 extends Base { /* no additions */ }
+    public static final class R2 extends Base { /* no additions */ }
+    public static final class R3 extends Base { /* no additions */ }
+    public static final class R4 extends Base { /* no additions */ }
+    public static final class R5 extends Base { /* no additions */ }
+    public static final class R6 extends Base { /* no additions */ }
+    public static final class R7 extends Base { /* no additions */ }
+}
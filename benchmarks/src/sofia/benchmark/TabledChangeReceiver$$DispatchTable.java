@@ -0,0 +1,72 @@
+// The output of the Sofia annotation processor (processor/) for
+// TabledChangeReceiver, checked in so that building the benchmarks does not
+// require the processor. Regenerate it if the processor's output changes.
+
+package sofia.benchmark;
+
+import java.lang.reflect.Method;
+import sofia.internal.events.DispatchTable;
+import sofia.internal.events.MethodInvoker;
+
+// Generated by sofia.processor.DispatchTableProcessor. Do not edit.
+@SuppressWarnings({ "unchecked", "rawtypes" })
+public final class TabledChangeReceiver$$DispatchTable extends DispatchTable
+{
+    @Override
+    protected MethodInvoker createInvoker(Method method)
+    {
+        String signature = signatureOf(method);
+
+        if ("barProgressChanged(java.lang.Object,int,boolean)".equals(signature))
+        {
+            return new MethodInvoker(method) {
+                @Override
+                public Object invoke(Object receiver, Object... args)
+                {
+                    ((sofia.benchmark.TabledChangeReceiver) receiver).barProgressChanged((java.lang.Object) args[0], (int) (java.lang.Integer) args[1], (boolean) (java.lang.Boolean) args[2]);
+                    return null;
+                }
+
+                @Override
+                public Object invokeLeading(Object receiver, int count, Object... args)
+                {
+                    return invoke(receiver, args);
+                }
+
+                @Override
+                public Object invokeIntBoolean(Object receiver, Object first, int value, boolean flag)
+                {
+                    ((sofia.benchmark.TabledChangeReceiver) receiver).barProgressChanged((java.lang.Object) first, value, flag);
+                    return null;
+                }
+            };
+        }
+
+        if ("barRatingChanged(java.lang.Object,float,boolean)".equals(signature))
+        {
+            return new MethodInvoker(method) {
+                @Override
+                public Object invoke(Object receiver, Object... args)
+                {
+                    ((sofia.benchmark.TabledChangeReceiver) receiver).barRatingChanged((java.lang.Object) args[0], (float) (java.lang.Float) args[1], (boolean) (java.lang.Boolean) args[2]);
+                    return null;
+                }
+
+                @Override
+                public Object invokeLeading(Object receiver, int count, Object... args)
+                {
+                    return invoke(receiver, args);
+                }
+
+                @Override
+                public Object invokeFloatBoolean(Object receiver, Object first, float value, boolean flag)
+                {
+                    ((sofia.benchmark.TabledChangeReceiver) receiver).barRatingChanged((java.lang.Object) first, value, flag);
+                    return null;
+                }
+            };
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2011 Virginia Tech Department of Computer Science
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package sofia.benchmark;
+
+//-------------------------------------------------------------------------
+/**
+ * The same handlers as {@link ChangeReceiver}, in a class that has a
+ * dispatch table generated by Sofia's annotation processor, so that its
+ * handlers are called directly.
+ */
+public class TabledChangeReceiver
+{
+    //~ Fields ................................................................
+
+    public long total;
+
+
+    //~ Public methods ........................................................
+
+    // ----------------------------------------------------------
+    public void barProgressChanged(Object bar, int progress, boolean fromUser)
+    {
+        total += progress;
+    }
+
+
+    // ----------------------------------------------------------
+    public void barRatingChanged(Object bar, float rating, boolean fromUser)
+    {
+        total += (long) rating;
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright (C) 2011 Virginia Tech Department of Computer Science
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.os;
+
+//-------------------------------------------------------------------------
+/**
+ * Stand-in for the Android class, for running benchmarks on a plain JVM. It
+ * reports the oldest platform that Sofia supports, so that code which checks
+ * the version takes its most portable path.
+ */
+public class Build
+{
+    //~ Inner classes .........................................................
+
+    // ----------------------------------------------------------
+    public static class VERSION
+    {
+        public static final int SDK_INT = 8;
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2011 Virginia Tech Department of Computer Science
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.os;
+
+//-------------------------------------------------------------------------
+/**
+ * Stand-in for the Android class, for running benchmarks on a plain JVM.
+ * Posted tasks run immediately on the posting thread.
+ */
+public class Handler
+{
+    //~ Constructors ..........................................................
+
+    // ----------------------------------------------------------
+    public Handler()
+    {
+        // Nothing to do
+    }
+
+
+    // ----------------------------------------------------------
+    public Handler(Looper looper)
+    {
+        // Nothing to do
+    }
+
+
+    //~ Public methods ........................................................
+
+    // ----------------------------------------------------------
+    public boolean post(Runnable task)
+    {
+        task.run();
+        return true;
+    }
+
+
+    // ----------------------------------------------------------
+    public boolean postDelayed(Runnable task, long delayMillis)
+    {
+        task.run();
+        return true;
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2011 Virginia Tech Department of Computer Science
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.os;
+
+//-------------------------------------------------------------------------
+/**
+ * Stand-in for the Android class, for running benchmarks on a plain JVM.
+ * There is a main looper, but no thread runs it, so code that checks whether
+ * it is on the main thread always finds that it is not.
+ */
+public class Looper
+{
+    //~ Fields ................................................................
+
+    private static final Looper mainLooper = new Looper();
+
+
+    //~ Public methods ........................................................
+
+    // ----------------------------------------------------------
+    public static Looper getMainLooper()
+    {
+        return mainLooper;
+    }
+
+
+    // ----------------------------------------------------------
+    public static Looper myLooper()
+    {
+        return null;
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2011 Virginia Tech Department of Computer Science
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.view;
+
+//-------------------------------------------------------------------------
+/**
+ * Stand-in for the Android class, for running benchmarks on a plain JVM. The
+ * stand-in {@link android.os.Build} reports a platform that predates this
+ * class, so it is never used; it only needs to exist.
+ */
+public final class Choreographer
+{
+    //~ Public methods ........................................................
+
+    // ----------------------------------------------------------
+    public static Choreographer getInstance()
+    {
+        throw new UnsupportedOperationException();
+    }
+
+
+    // ----------------------------------------------------------
+    public void postFrameCallback(FrameCallback callback)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+
+    //~ Inner classes .........................................................
+
+    // ----------------------------------------------------------
+    public interface FrameCallback
+    {
+        void doFrame(long frameTimeNanos);
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2011 Virginia Tech Department of Computer Science
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.view;
+
+//-------------------------------------------------------------------------
+/**
+ * Stand-in for the Android class, for running benchmarks on a plain JVM. An
+ * event holds a single pointer and an optional history of earlier samples,
+ * and its raw coordinates are the same as its local ones.
+ */
+public final class MotionEvent
+{
+    //~ Fields ................................................................
+
+    public static final int ACTION_MASK = 0xff;
+    public static final int ACTION_DOWN = 0;
+    public static final int ACTION_UP = 1;
+    public static final int ACTION_MOVE = 2;
+
+    private int action;
+    private float[] xs;
+    private float[] ys;
+    private long[] times;
+
+
+    //~ Constructors ..........................................................
+
+    // ----------------------------------------------------------
+    private MotionEvent(int action, float[] xs, float[] ys, long[] times)
+    {
+        this.action = action;
+        this.xs = xs;
+        this.ys = ys;
+        this.times = times;
+    }
+
+
+    //~ Public methods ........................................................
+
+    // ----------------------------------------------------------
+    public static MotionEvent obtain(long downTime, long eventTime,
+            int action, float x, float y, int metaState)
+    {
+        return new MotionEvent(action, new float[] { x }, new float[] { y },
+                new long[] { eventTime });
+    }
+
+
+    // ----------------------------------------------------------
+    public static MotionEvent obtain(MotionEvent other)
+    {
+        return new MotionEvent(other.action, other.xs.clone(),
+                other.ys.clone(), other.times.clone());
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Adds a sample to the event, moving the current one into its history,
+     * as the platform does when it batches move events.
+     */
+    public void addBatch(long eventTime, float x, float y, float pressure,
+            float size, int metaState)
+    {
+        xs = append(xs, x);
+        ys = append(ys, y);
+
+        long[] newTimes = new long[times.length + 1];
+        System.arraycopy(times, 0, newTimes, 0, times.length);
+        newTimes[times.length] = eventTime;
+        times = newTimes;
+    }
+
+
+    // ----------------------------------------------------------
+    public void recycle()
+    {
+        // Nothing to release
+    }
+
+
+    // ----------------------------------------------------------
+    public int getAction()
+    {
+        return action;
+    }
+
+
+    // ----------------------------------------------------------
+    public float getX()
+    {
+        return xs[xs.length - 1];
+    }
+
+
+    // ----------------------------------------------------------
+    public float getY()
+    {
+        return ys[ys.length - 1];
+    }
+
+
+    // ----------------------------------------------------------
+    public float getRawX()
+    {
+        return getX();
+    }
+
+
+    // ----------------------------------------------------------
+    public float getRawY()
+    {
+        return getY();
+    }
+
+
+    // ----------------------------------------------------------
+    public long getEventTime()
+    {
+        return times[times.length - 1];
+    }
+
+
+    // ----------------------------------------------------------
+    public int getHistorySize()
+    {
+        return xs.length - 1;
+    }
+
+
+    // ----------------------------------------------------------
+    public float getHistoricalX(int pos)
+    {
+        return xs[pos];
+    }
+
+
+    // ----------------------------------------------------------
+    public float getHistoricalY(int pos)
+    {
+        return ys[pos];
+    }
+
+
+    // ----------------------------------------------------------
+    public long getHistoricalEventTime(int pos)
+    {
+        return times[pos];
+    }
+
+
+    //~ Private methods .......................................................
+
+    // ----------------------------------------------------------
+    private static float[] append(float[] values, float value)
+    {
+        float[] newValues = new float[values.length + 1];
+        System.arraycopy(values, 0, newValues, 0, values.length);
+        newValues[values.length] = value;
+        return newValues;
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2011 Virginia Tech Department of Computer Science
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package sofia.benchmark;
+
+import java.lang.management.ManagementFactory;
+
+//-------------------------------------------------------------------------
+/**
+ * Counts the bytes that the current thread allocates while running a task,
+ * for tests that check that a path does not allocate. It relies on the
+ * HotSpot extension of {@link java.lang.management.ThreadMXBean}.
+ */
+public class Allocations
+{
+    //~ Fields ................................................................
+
+    /**
+     * The number of times {@link #bytesPerCall(Runnable, int)} runs a task
+     * before measuring it: enough for reflective accessors to be generated
+     * and the JIT to compile the path, so that one-time allocations are not
+     * counted.
+     */
+    public static final int WARMUP_CALLS = 20000;
+
+    private static final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean)
+                ManagementFactory.getThreadMXBean();
+
+
+    //~ Constructors ..........................................................
+
+    // ----------------------------------------------------------
+    private Allocations()
+    {
+        // Static methods only.
+    }
+
+
+    //~ Public methods ........................................................
+
+    // ----------------------------------------------------------
+    /**
+     * Runs a task {@link #WARMUP_CALLS} times to warm it up, then
+     * {@code calls} more times, and gets the average number of bytes that
+     * the current thread allocates per measured run.
+     *
+     * @param task the task to measure
+     * @param calls the number of measured runs
+     * @return the average number of bytes allocated per run
+     */
+    public static double bytesPerCall(Runnable task, int calls)
+    {
+        for (int i = 0; i < WARMUP_CALLS; i++)
+        {
+            task.run();
+        }
+
+        long thread = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(thread);
+
+        for (int i = 0; i < calls; i++)
+        {
+            task.run();
+        }
+
+        long after = threads.getThreadAllocatedBytes(thread);
+        return (after - before) / (double) calls;
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2011 Virginia Tech Department of Computer Science
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package sofia.internal.events;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import sofia.benchmark.Allocations;
+import sofia.benchmark.Receivers;
+
+//-------------------------------------------------------------------------
+/**
+ * Checks that dispatching an event whose handler is already resolved does
+ * not allocate, so that touch streams and timers do not produce garbage.
+ * The arguments are built once, as a caller with a reusable argument array
+ * would; a smallest object is 16 bytes, so any allocation per event raises
+ * the average to at least that.
+ */
+public class DispatchAllocationTest
+{
+    //~ Fields ................................................................
+
+    private static final int CALLS = 100000;
+
+    // Anything below one byte per call means that no event allocated; the
+    // margin absorbs a stray allocation by the JIT or the measurement.
+    private static final double NO_ALLOCATION = 1.0;
+
+
+    //~ Public methods ........................................................
+
+    // ----------------------------------------------------------
+    @Test
+    public void warmDispatchDoesNotAllocate()
+    {
+        final EventDispatcher dispatcher = new EventDispatcher("valueChanged");
+        final Receivers.Base receiver = Receivers.create(1)[0];
+        final Object[] args = { "source", 42 };
+
+        double bytes = Allocations.bytesPerCall(new Runnable() {
+            public void run()
+            {
+                dispatcher.dispatch(receiver, args);
+            }
+        }, CALLS);
+
+        assertEquals((long) (Allocations.WARMUP_CALLS + CALLS) * 42,
+                receiver.total);
+        assertTrue("allocated " + bytes + " bytes per dispatch",
+                bytes < NO_ALLOCATION);
+    }
+
+
+    // ----------------------------------------------------------
+    @Test
+    public void dispatchWithNoArgumentsDoesNotAllocate()
+    {
+        final EventDispatcher dispatcher = new EventDispatcher("reset");
+        final Resettable receiver = new Resettable();
+
+        double bytes = Allocations.bytesPerCall(new Runnable() {
+            public void run()
+            {
+                dispatcher.dispatch(receiver);
+            }
+        }, CALLS);
+
+        assertTrue(receiver.resets > CALLS);
+        assertTrue("allocated " + bytes + " bytes per dispatch",
+                bytes < NO_ALLOCATION);
+    }
+
+
+    // ----------------------------------------------------------
+    @Test
+    public void trimmedOptionalDispatchDoesNotAllocate()
+    {
+        final EventDispatcher dispatcher =
+                new OptionalEventDispatcher("itemClicked", 1);
+        final Receivers.Base receiver = Receivers.create(1)[0];
+        final Object[] args = { "item", 7 };
+
+        double bytes = Allocations.bytesPerCall(new Runnable() {
+            public void run()
+            {
+                dispatcher.dispatch(receiver, args);
+            }
+        }, CALLS);
+
+        assertTrue(receiver.total > CALLS);
+        assertTrue("allocated " + bytes + " bytes per dispatch",
+                bytes < NO_ALLOCATION);
+    }
+
+
+    // ----------------------------------------------------------
+    @Test
+    public void polymorphicDispatchWithinInlineCacheDoesNotAllocate()
+    {
+        final EventDispatcher dispatcher = new EventDispatcher("valueChanged");
+        final Receivers.Base[] receivers = Receivers.create(4);
+        final Object[] args = { "source", 1 };
+
+        double bytes = Allocations.bytesPerCall(new Runnable() {
+            private int next;
+
+            public void run()
+            {
+                dispatcher.dispatch(receivers[next], args);
+                next = (next + 1) & 3;
+            }
+        }, CALLS);
+
+        assertTrue("allocated " + bytes + " bytes per dispatch",
+                bytes < NO_ALLOCATION);
+    }
+
+
+    //~ Inner classes .........................................................
+
+    // ----------------------------------------------------------
+    public static class Resettable
+    {
+        public int resets;
+
+
+        // ----------------------------------------------------------
+        public void reset()
+        {
+            resets++;
+        }
+    }
+}
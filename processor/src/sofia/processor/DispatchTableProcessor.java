@@ -0,0 +1,523 @@
+/*
+ * Copyright (C) 2011 Virginia Tech Department of Computer Science
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package sofia.processor;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+
+//-------------------------------------------------------------------------
+/**
+ * <p>
+ * An annotation processor that generates a
+ * {@code sofia.internal.events.DispatchTable} for each class that declares
+ * Sofia event handlers, so that those handlers are invoked directly instead
+ * of through reflection at runtime.
+ * </p><p>
+ * A handler is any non-private, non-static method declared in a subclass of
+ * {@code sofia.app.Screen}, or any such method in another class whose name
+ * follows one of Sofia's event naming conventions ({@code *Clicked},
+ * {@code *ItemSelected}, {@code *ProgressChanged}, {@code onTouchDown},
+ * {@code initialize}, {@code changeWasObserved}, and so on). Classes that
+ * cannot be referenced from their own package (private or local classes)
+ * are skipped and continue to be dispatched reflectively.
+ * </p>
+ */
+@SupportedAnnotationTypes("*")
+public class DispatchTableProcessor extends AbstractProcessor
+{
+    //~ Fields ................................................................
+
+    private static final String SUFFIX = "$$DispatchTable";
+    private static final String SCREEN_CLASS = "sofia.app.Screen";
+
+    private static final Pattern HANDLER_NAME = Pattern.compile(
+            ".+(Clicked|Selected|Changed|TrackingStarted|TrackingStopped"
+            + "|EditingDone|Finished|Canceled|WasChosen|WasTaken|WasObserved)"
+            + "|on(Screen)?(TouchDown|TouchMove|TouchUp|Tap|DoubleTap)"
+            + "|initialize");
+
+
+    //~ Public methods ........................................................
+
+    // ----------------------------------------------------------
+    @Override
+    public SourceVersion getSupportedSourceVersion()
+    {
+        return SourceVersion.latestSupported();
+    }
+
+
+    // ----------------------------------------------------------
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations,
+            RoundEnvironment roundEnv)
+    {
+        for (TypeElement type :
+            ElementFilter.typesIn(roundEnv.getRootElements()))
+        {
+            processType(type);
+        }
+
+        // Never claim annotations; other processors may need them.
+        return false;
+    }
+
+
+    //~ Private methods .......................................................
+
+    // ----------------------------------------------------------
+    private void processType(TypeElement type)
+    {
+        for (TypeElement member :
+            ElementFilter.typesIn(type.getEnclosedElements()))
+        {
+            processType(member);
+        }
+
+        if (type.getKind() != ElementKind.CLASS || !isReachable(type))
+        {
+            return;
+        }
+
+        boolean isScreen = isScreen(type);
+        List<ExecutableElement> handlers = new ArrayList<ExecutableElement>();
+
+        for (ExecutableElement method :
+            ElementFilter.methodsIn(type.getEnclosedElements()))
+        {
+            Set<Modifier> modifiers = method.getModifiers();
+
+            if (modifiers.contains(Modifier.PRIVATE)
+                    || modifiers.contains(Modifier.STATIC)
+                    || modifiers.contains(Modifier.ABSTRACT)
+                    || !method.getTypeParameters().isEmpty())
+            {
+                continue;
+            }
+
+            if ((isScreen || HANDLER_NAME.matcher(
+                    method.getSimpleName()).matches())
+                    && hasReachableParameters(method))
+            {
+                handlers.add(method);
+            }
+        }
+
+        if (!handlers.isEmpty())
+        {
+            try
+            {
+                writeTable(type, handlers);
+            }
+            catch (IOException e)
+            {
+                processingEnv.getMessager().printMessage(
+                        Diagnostic.Kind.WARNING,
+                        "Could not generate dispatch table: " + e, type);
+            }
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    private void writeTable(TypeElement type, List<ExecutableElement> handlers)
+        throws IOException
+    {
+        PackageElement pkg =
+                processingEnv.getElementUtils().getPackageOf(type);
+        String binaryName =
+                processingEnv.getElementUtils().getBinaryName(type).toString();
+        String tableName = binaryName + SUFFIX;
+        String simpleName = pkg.isUnnamed()
+                ? tableName
+                : tableName.substring(pkg.getQualifiedName().length() + 1);
+        String receiverType = erasure(type.asType());
+
+        PrintWriter out = new PrintWriter(processingEnv.getFiler()
+                .createSourceFile(tableName, type).openWriter());
+
+        if (!pkg.isUnnamed())
+        {
+            out.println("package " + pkg.getQualifiedName() + ";");
+            out.println();
+        }
+
+        out.println("import java.lang.reflect.Method;");
+        out.println("import sofia.internal.events.DispatchTable;");
+        out.println("import sofia.internal.events.MethodInvoker;");
+        out.println();
+        out.println("// Generated by " + getClass().getName()
+                + ". Do not edit.");
+        out.println("@SuppressWarnings({ \"unchecked\", \"rawtypes\" })");
+        out.println("public final class " + simpleName
+                + " extends DispatchTable");
+        out.println("{");
+        out.println("    @Override");
+        out.println("    protected MethodInvoker createInvoker("
+                + "Method method)");
+        out.println("    {");
+        out.println("        String signature = signatureOf(method);");
+
+        for (ExecutableElement handler : handlers)
+        {
+            writeInvoker(out, receiverType, handler);
+        }
+
+        out.println();
+        out.println("        return null;");
+        out.println("    }");
+        out.println("}");
+        out.close();
+    }
+
+
+    // ----------------------------------------------------------
+    private void writeInvoker(PrintWriter out, String receiverType,
+            ExecutableElement handler)
+    {
+        List<? extends VariableElement> params = handler.getParameters();
+        boolean isVoid = handler.getReturnType().getKind() == TypeKind.VOID;
+        boolean throwsChecked = !handler.getThrownTypes().isEmpty();
+
+        StringBuilder signature = new StringBuilder();
+        StringBuilder call = new StringBuilder();
+        signature.append(handler.getSimpleName()).append('(');
+        call.append("((").append(receiverType).append(") receiver).")
+            .append(handler.getSimpleName()).append('(');
+
+        for (int i = 0; i < params.size(); i++)
+        {
+            TypeMirror paramType = params.get(i).asType();
+            String typeName = erasure(paramType);
+
+            if (i > 0)
+            {
+                signature.append(',');
+                call.append(", ");
+            }
+
+            signature.append(typeName);
+
+            if (paramType.getKind().isPrimitive())
+            {
+                // Unbox through the wrapper type, which is what the
+                // dispatcher passes for primitive parameters.
+                call.append("(").append(typeName).append(") (")
+                    .append(processingEnv.getTypeUtils().boxedClass(
+                            processingEnv.getTypeUtils().getPrimitiveType(
+                                    paramType.getKind())).getQualifiedName())
+                    .append(") args[").append(i).append("]");
+            }
+            else
+            {
+                call.append("(").append(typeName).append(") args[")
+                    .append(i).append("]");
+            }
+        }
+
+        signature.append(')');
+        call.append(')');
+
+        String indent = throwsChecked ? "                        "
+                : "                    ";
+
+        out.println();
+        out.println("        if (\"" + signature + "\".equals(signature))");
+        out.println("        {");
+        out.println("            return new MethodInvoker(method) {");
+        out.println("                @Override");
+        out.println("                public Object invoke("
+                + "Object receiver, Object... args)");
+        out.println("                {");
+
+        if (throwsChecked)
+        {
+            out.println("                    try");
+            out.println("                    {");
+        }
+
+        if (isVoid)
+        {
+            out.println(indent + call + ";");
+            out.println(indent + "return null;");
+        }
+        else
+        {
+            out.println(indent + "return " + call + ";");
+        }
+
+        if (throwsChecked)
+        {
+            out.println("                    }");
+            out.println("                    catch (RuntimeException e)");
+            out.println("                    {");
+            out.println("                        throw e;");
+            out.println("                    }");
+            out.println("                    catch (Error e)");
+            out.println("                    {");
+            out.println("                        throw e;");
+            out.println("                    }");
+            out.println("                    catch (Throwable e)");
+            out.println("                    {");
+            out.println("                        throw new RuntimeException(e);");
+            out.println("                    }");
+        }
+
+        out.println("                }");
+
+        // The call above only reads the leading elements of args, so
+        // trailing optional arguments can be passed without copying.
+        out.println();
+        out.println("                @Override");
+        out.println("                public Object invokeLeading("
+                + "Object receiver, int count, Object... args)");
+        out.println("                {");
+        out.println("                    return invoke(receiver, args);");
+        out.println("                }");
+
+        String pairType = primitivePairType(params);
+        if (pairType != null && !throwsChecked)
+        {
+            String suffix = Character.toUpperCase(pairType.charAt(0))
+                    + pairType.substring(1);
+            String pairCall = "((" + receiverType + ") receiver)."
+                    + handler.getSimpleName() + "(a, b)";
+
+            out.println();
+            out.println("                @Override");
+            out.println("                public Object invoke" + suffix
+                    + suffix + "(Object receiver, " + pairType + " a, "
+                    + pairType + " b)");
+            out.println("                {");
+
+            if (isVoid)
+            {
+                out.println("                    " + pairCall + ";");
+                out.println("                    return null;");
+            }
+            else
+            {
+                out.println("                    return " + pairCall + ";");
+            }
+
+            out.println("                }");
+        }
+
+        String leadingType = leadingPrimitiveType(params);
+        if (leadingType != null && !throwsChecked)
+        {
+            String suffix = Character.toUpperCase(leadingType.charAt(0))
+                    + leadingType.substring(1) + "Boolean";
+            StringBuilder leadingCall = new StringBuilder();
+            leadingCall.append("((").append(receiverType)
+                .append(") receiver).").append(handler.getSimpleName())
+                .append("((").append(erasure(params.get(0).asType()))
+                .append(") first, value");
+
+            if (params.size() == 3)
+            {
+                leadingCall.append(", flag");
+            }
+
+            leadingCall.append(')');
+
+            out.println();
+            out.println("                @Override");
+            out.println("                public Object invoke" + suffix
+                    + "(Object receiver, Object first, " + leadingType
+                    + " value, boolean flag)");
+            out.println("                {");
+
+            if (isVoid)
+            {
+                out.println("                    " + leadingCall + ";");
+                out.println("                    return null;");
+            }
+            else
+            {
+                out.println("                    return " + leadingCall + ";");
+            }
+
+            out.println("                }");
+        }
+
+        out.println("            };");
+        out.println("        }");
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Gets the primitive type name if the parameters are exactly two floats
+     * or two ints, which MethodInvoker has unboxed entry points for.
+     */
+    private String primitivePairType(List<? extends VariableElement> params)
+    {
+        if (params.size() == 2)
+        {
+            TypeKind first = params.get(0).asType().getKind();
+            TypeKind second = params.get(1).asType().getKind();
+
+            if (first == second && first == TypeKind.FLOAT)
+            {
+                return "float";
+            }
+            else if (first == second && first == TypeKind.INT)
+            {
+                return "int";
+            }
+        }
+
+        return null;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Gets the primitive type name if the parameters are an object followed
+     * by an int or a float, optionally followed by a boolean, which
+     * MethodInvoker has unboxed entry points for. Shorter parameter lists
+     * involve no boxing, so they do not need a generated override.
+     */
+    private String leadingPrimitiveType(
+            List<? extends VariableElement> params)
+    {
+        if (params.size() < 2 || params.size() > 3
+                || params.get(0).asType().getKind().isPrimitive()
+                || (params.size() == 3 && params.get(2).asType().getKind()
+                        != TypeKind.BOOLEAN))
+        {
+            return null;
+        }
+
+        TypeKind value = params.get(1).asType().getKind();
+
+        if (value == TypeKind.INT)
+        {
+            return "int";
+        }
+        else if (value == TypeKind.FLOAT)
+        {
+            return "float";
+        }
+
+        return null;
+    }
+
+
+    // ----------------------------------------------------------
+    private boolean isScreen(TypeElement type)
+    {
+        TypeElement screen =
+                processingEnv.getElementUtils().getTypeElement(SCREEN_CLASS);
+
+        return screen != null && processingEnv.getTypeUtils().isSubtype(
+                processingEnv.getTypeUtils().erasure(type.asType()),
+                processingEnv.getTypeUtils().erasure(screen.asType()));
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Gets a value indicating whether a class can be named from generated
+     * code in its own package.
+     */
+    private boolean isReachable(TypeElement type)
+    {
+        Element element = type;
+
+        while (element instanceof TypeElement)
+        {
+            TypeElement current = (TypeElement) element;
+
+            if (current.getModifiers().contains(Modifier.PRIVATE))
+            {
+                return false;
+            }
+
+            NestingKind nesting = current.getNestingKind();
+            if (nesting == NestingKind.LOCAL
+                    || nesting == NestingKind.ANONYMOUS)
+            {
+                return false;
+            }
+
+            element = current.getEnclosingElement();
+        }
+
+        return true;
+    }
+
+
+    // ----------------------------------------------------------
+    private boolean hasReachableParameters(ExecutableElement method)
+    {
+        for (VariableElement param : method.getParameters())
+        {
+            TypeMirror type = param.asType();
+
+            while (type.getKind() == TypeKind.ARRAY)
+            {
+                type = ((javax.lang.model.type.ArrayType) type)
+                        .getComponentType();
+            }
+
+            if (type.getKind() == TypeKind.TYPEVAR)
+            {
+                type = processingEnv.getTypeUtils().erasure(type);
+            }
+
+            if (type.getKind() == TypeKind.DECLARED
+                    && !isReachable((TypeElement)
+                            ((DeclaredType) type).asElement()))
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+
+    // ----------------------------------------------------------
+    private String erasure(TypeMirror type)
+    {
+        return processingEnv.getTypeUtils().erasure(type).toString();
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2011 Virginia Tech Department of Computer Science
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package sofia.app;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+//-------------------------------------------------------------------------
+/**
+ * <p>
+ * Use this annotation on an event handler, such as a {@code *Clicked} or
+ * {@code *EditingDone} method, that does slow work like reading files or
+ * accessing the network. Instead of running on the UI thread and freezing
+ * the screen, the handler is queued to run on a background thread and the
+ * event returns immediately.
+ * </p><p>
+ * A background handler must not touch views directly. To update the screen
+ * when the work is done, name a method in the annotation; it will be called
+ * on the UI thread with the handler's return value (or with no arguments, if
+ * the handler is {@code void}):
+ * </p>
+ * <pre>
+ * {@literal @}Background(then = "pageLoaded")
+ * public String loadClicked()
+ * {
+ *     return downloadPage();
+ * }
+ *
+ * public void pageLoaded(String page)
+ * {
+ *     text.setText(page);
+ * }</pre>
+ * <p>
+ * Background handlers whose receiver is a {@link Screen} are interrupted,
+ * and their follow-up methods skipped, when the screen is destroyed.
+ * </p>
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface Background
+{
+	//~ Values ................................................................
+
+	// ----------------------------------------------------------
+	/**
+	 * The name of a method to call on the UI thread after the handler
+	 * finishes, or an empty string for none.
+	 */
+	public String then() default "";
+}
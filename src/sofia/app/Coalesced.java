@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2011 Virginia Tech Department of Computer Science
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package sofia.app;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+//-------------------------------------------------------------------------
+/**
+ * <p>
+ * Use this annotation on an event handler that can be called many times
+ * between screen refreshes, such as {@code onTouchMove} or
+ * {@code *ProgressChanged}, to have Sofia call it at most once per frame
+ * instead of once per event. For example:
+ * </p>
+ * <pre>
+ * {@literal @}Coalesced
+ * public void onTouchMove(float x, float y)
+ * {
+ *     // Called once per frame, with the most recent coordinates.
+ * }</pre>
+ * <p>
+ * By default, only the arguments from the most recent event in a frame are
+ * delivered. Handlers whose parameters are one or more arrays followed by an
+ * {@code int} count, such as the batched form of {@code onTouchMove}, can use
+ * {@code @Coalesced(Coalesced.Mode.ACCUMULATE)} to receive every sample from
+ * the frame instead.
+ * </p><p>
+ * A coalesced handler is called after the event that triggered it has
+ * finished dispatching, so its return value cannot stop the event from
+ * being dispatched further and is ignored.
+ * </p>
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface Coalesced
+{
+	//~ Nested classes ........................................................
+
+	// ----------------------------------------------------------
+	/**
+	 * How the arguments of events that occur in the same frame are
+	 * combined.
+	 */
+	public enum Mode
+	{
+		/**
+		 * Deliver only the arguments of the last event in the frame.
+		 */
+		LATEST,
+
+		/**
+		 * Concatenate the first {@code count} elements of each array
+		 * argument, and sum the trailing {@code int} count, across every
+		 * event in the frame. Handlers whose parameters do not have this
+		 * shape receive the latest arguments instead.
+		 */
+		ACCUMULATE
+	}
+
+
+	//~ Values ................................................................
+
+	// ----------------------------------------------------------
+	/**
+	 * How the arguments of events in the same frame are combined.
+	 */
+	public Mode value() default Mode.LATEST;
+}
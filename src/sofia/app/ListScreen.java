@@ -17,6 +17,7 @@
 package sofia.app;
 
 import sofia.app.internal.EventBinder;
+import sofia.util.ObservableList;
 import sofia.widget.ListView;
 
 import android.view.Gravity;
@@ -346,6 +347,41 @@ public abstract class ListScreen<E> extends Screen
     }
 
 
+    // ----------------------------------------------------------
+    /**
+     * Replaces the items in the list view with the items in the specified
+     * collection. Only the rows for items that were actually inserted,
+     * removed, moved, or replaced are updated, so this is the cheapest way
+     * to refresh the list view from a data source. Items are compared with
+     * {@code equals}; see
+     * {@link ObservableList#setAll(Collection, ObservableList.KeyExtractor)}
+     * to match them by key instead.
+     *
+     * @param items the new items for the list view
+     */
+    public void setAll(Collection<? extends E> items)
+    {
+        listView.setAll(items);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Replaces the items in the list view with the items in the specified
+     * collection, matching old and new items by the keys that {@code keys}
+     * extracts from them. See
+     * {@link ObservableList#setAll(Collection, ObservableList.KeyExtractor)}.
+     *
+     * @param items the new items for the list view
+     * @param keys extracts the key that identifies each item
+     */
+    public void setAll(Collection<? extends E> items,
+            ObservableList.KeyExtractor<? super E> keys)
+    {
+        listView.setAll(items, keys);
+    }
+
+
     // ----------------------------------------------------------
     /**
      * Gets the currently selected item in the list view.
@@ -16,10 +16,13 @@
 
 package sofia.app.internal;
 
+import sofia.internal.events.DispatchMetrics;
 import sofia.internal.events.EventDispatcher;
+import sofia.internal.events.MethodInvoker;
 import sofia.internal.events.OptionalEventDispatcher;
 
 import android.content.Context;
+import android.os.Process;
 import android.util.AttributeSet;
 import android.util.Log;
 import android.view.KeyEvent;
@@ -35,6 +38,9 @@ import android.widget.SeekBar;
 import android.widget.TextView;
 
 import java.util.HashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 //-------------------------------------------------------------------------
 /**
@@ -52,6 +58,9 @@ public class EventBinder
     private static HashMap<
         Class<? extends View>, Binder<? extends View>> binders;
 
+    private static volatile boolean preResolving;
+    private static ExecutorService resolver;
+
     private Object receiver;
 
 
@@ -99,6 +108,87 @@ public class EventBinder
     }
 
 
+    // ----------------------------------------------------------
+    /**
+     * Sets whether handlers are resolved ahead of time. When enabled, each
+     * time a view is bound, every handler that its events could call (based
+     * on the view's ID) is resolved on a low-priority worker thread, so that
+     * the first click or change on the view is as fast as later ones. This
+     * is off by default.
+     *
+     * @param enabled true to resolve handlers when views are bound, false to
+     *     resolve them on first use
+     */
+    public static void setPreResolving(boolean enabled)
+    {
+        preResolving = enabled;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Gets whether handlers are resolved ahead of time.
+     *
+     * @return true if handlers are resolved when views are bound
+     */
+    public static boolean isPreResolving()
+    {
+        return preResolving;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Resolves a dispatcher's handlers on the worker thread, if handlers are
+     * being resolved ahead of time.
+     *
+     * @param event the dispatcher that the view's listener will use
+     * @param receiver the receiver of the events
+     * @param argTypes the types of the arguments that will be dispatched, or
+     *     null for any that are not known until the event occurs
+     */
+    private static void preResolve(final EventDispatcher event,
+            final Object receiver, final Class<?>... argTypes)
+    {
+        if (preResolving)
+        {
+            getResolver().execute(new Runnable() {
+                public void run()
+                {
+                    event.preResolve(receiver, argTypes);
+                }
+            });
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    private static synchronized ExecutorService getResolver()
+    {
+        if (resolver == null)
+        {
+            resolver = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                public Thread newThread(final Runnable task)
+                {
+                    Thread thread = new Thread(new Runnable() {
+                        public void run()
+                        {
+                            Process.setThreadPriority(
+                                    Process.THREAD_PRIORITY_BACKGROUND);
+                            task.run();
+                        }
+                    }, "Sofia handler resolver");
+
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+
+        return resolver;
+    }
+
+
     // ----------------------------------------------------------
     /**
      * Gets the string name of the specified resource ID.
@@ -170,6 +260,7 @@ public class EventBinder
                 {
                     final OptionalEventDispatcher event =
                             new OptionalEventDispatcher(id + "Clicked", 0);
+                    preResolve(event, receiver, view.getClass());
 
                     try
                     {
@@ -222,6 +313,7 @@ public class EventBinder
 
             final OptionalEventDispatcher event =
                     new OptionalEventDispatcher(id + "ItemClicked", 1);
+            preResolve(event, receiver, null, Integer.class);
 
             view.setOnItemClickListener(
                     new AdapterView.OnItemClickListener() {
@@ -257,6 +349,8 @@ public class EventBinder
                         new OptionalEventDispatcher(id + "ItemSelected", 1);
                 final EventDispatcher nothingEvent =
                         new EventDispatcher(id + "NothingSelected");
+                preResolve(itemEvent, receiver, null, Integer.class);
+                preResolve(nothingEvent, receiver);
 
                 view.setOnItemSelectedListener(
                         new AdapterView.OnItemSelectedListener() {
@@ -293,6 +387,16 @@ public class EventBinder
             EditText editText = (EditText) view;
             editText.setOnEditorActionListener(
                     new EditorActionListener(receiver));
+
+            String id = getIdName(view.getContext(), view.getId());
+
+            if (id != null)
+            {
+                // The listener creates its dispatcher when the event occurs,
+                // but the resolution is shared.
+                preResolve(new OptionalEventDispatcher(id + "EditingDone"),
+                        receiver, view.getClass());
+            }
         }
     };
 
@@ -322,14 +426,26 @@ public class EventBinder
                 final OptionalEventDispatcher stoppedEvent =
                         new OptionalEventDispatcher(
                                 id + "TrackingStopped", 0);
+                preResolve(changedEvent, receiver,
+                        view.getClass(), Integer.class, Boolean.class);
+                preResolve(startedEvent, receiver,
+                        view.getClass(), Integer.class);
+                preResolve(stoppedEvent, receiver,
+                        view.getClass(), Integer.class);
 
                 view.setOnSeekBarChangeListener(
                         new SeekBar.OnSeekBarChangeListener() {
+                            // Progress changes arrive at touch rate on the
+                            // UI thread, so the progress is passed to the
+                            // handler without boxing.
+                            private final ChangeHandler changed =
+                                    new ChangeHandler(changedEvent,
+                                            receiver, Integer.class);
+
                             public void onProgressChanged(SeekBar seekBar,
                                     int progress, boolean fromUser)
                             {
-                                changedEvent.dispatch(receiver, seekBar,
-                                        progress, fromUser);
+                                changed.intChanged(seekBar, progress, fromUser);
                             }
 
                             public void onStartTrackingTouch(SeekBar seekBar)
@@ -369,14 +485,22 @@ public class EventBinder
                 final OptionalEventDispatcher changedEvent =
                         new OptionalEventDispatcher(
                                 id + "RatingChanged", 0);
+                preResolve(changedEvent, receiver,
+                        view.getClass(), Float.class, Boolean.class);
 
                 view.setOnRatingBarChangeListener(
                         new RatingBar.OnRatingBarChangeListener() {
+                            // Boxing a float always allocates, so the
+                            // rating is passed to the handler unboxed.
+                            private final ChangeHandler changed =
+                                    new ChangeHandler(changedEvent,
+                                            receiver, Float.class);
+
                             public void onRatingChanged(RatingBar ratingBar,
                                     float rating, boolean fromUser)
                             {
-                                changedEvent.dispatch(receiver, ratingBar,
-                                        rating, fromUser);
+                                changed.floatChanged(
+                                        ratingBar, rating, fromUser);
                             }
                 });
             }
@@ -384,6 +508,110 @@ public class EventBinder
     };
 
 
+    // ----------------------------------------------------------
+    /**
+     * The handler for a change event whose arguments are the view, a
+     * primitive value, and whether the user made the change. The handler is
+     * resolved when the first change is delivered, through the dispatcher's
+     * caches (which the binder has usually filled ahead of time), and its
+     * invoker is then kept, so that later changes are passed to it through
+     * the invoker's primitive entry points. Invocations are recorded in the
+     * {@link DispatchMetrics}, as a dispatch's would be. Only used on the UI
+     * thread.
+     */
+    private static class ChangeHandler
+    {
+        private final OptionalEventDispatcher event;
+        private final Object receiver;
+        private final Class<?> valueType;
+        private MethodInvoker invoker;
+        private boolean resolved;
+
+
+        // ----------------------------------------------------------
+        public ChangeHandler(OptionalEventDispatcher event, Object receiver,
+                Class<?> valueType)
+        {
+            this.event = event;
+            this.receiver = receiver;
+            this.valueType = valueType;
+        }
+
+
+        // ----------------------------------------------------------
+        /**
+         * Passes an int value to the handler, if there is one.
+         *
+         * @param view the view whose value changed
+         * @param value the new value
+         * @param fromUser whether the user made the change
+         */
+        public void intChanged(View view, int value, boolean fromUser)
+        {
+            MethodInvoker handler = getInvoker(view);
+
+            if (handler != null)
+            {
+                DispatchMetrics metrics = DispatchMetrics.getCurrent();
+                long start = (metrics != null) ? System.nanoTime() : 0;
+
+                handler.invokeIntBoolean(receiver, view, value, fromUser);
+
+                if (metrics != null)
+                {
+                    metrics.recordInvocation(receiver.getClass(),
+                            event.getMethodName(), System.nanoTime() - start);
+                }
+            }
+        }
+
+
+        // ----------------------------------------------------------
+        /**
+         * Passes a float value to the handler, if there is one.
+         *
+         * @param view the view whose value changed
+         * @param value the new value
+         * @param fromUser whether the user made the change
+         */
+        public void floatChanged(View view, float value, boolean fromUser)
+        {
+            MethodInvoker handler = getInvoker(view);
+
+            if (handler != null)
+            {
+                DispatchMetrics metrics = DispatchMetrics.getCurrent();
+                long start = (metrics != null) ? System.nanoTime() : 0;
+
+                handler.invokeFloatBoolean(receiver, view, value, fromUser);
+
+                if (metrics != null)
+                {
+                    metrics.recordInvocation(receiver.getClass(),
+                            event.getMethodName(), System.nanoTime() - start);
+                }
+            }
+        }
+
+
+        // ----------------------------------------------------------
+        /**
+         * Gets the invoker for the handler, resolving it if necessary.
+         */
+        private MethodInvoker getInvoker(View view)
+        {
+            if (!resolved)
+            {
+                invoker = event.resolveInvoker(receiver,
+                        view.getClass(), valueType, Boolean.class);
+                resolved = true;
+            }
+
+            return invoker;
+        }
+    }
+
+
     // ----------------------------------------------------------
     private static class EditorActionListener
         implements TextView.OnEditorActionListener
@@ -23,12 +23,14 @@ import sofia.app.ScreenLayout;
 import sofia.internal.ModalTask;
 import sofia.internal.events.EventDispatcher;
 import sofia.internal.events.OptionalEventDispatcher;
+import sofia.internal.events.ResolutionStore;
 
 import android.app.Activity;
 import android.app.AlertDialog;
 import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
+import android.content.pm.PackageInfo;
 import android.os.Bundle;
 import android.view.LayoutInflater;
 import android.view.Menu;
@@ -36,6 +38,7 @@ import android.view.MenuInflater;
 import android.view.MenuItem;
 import android.widget.ScrollView;
 
+import java.io.File;
 import java.lang.ref.WeakReference;
 import java.lang.reflect.Method;
 import java.util.HashMap;
@@ -85,6 +88,20 @@ public class ScreenMixin
 
     private EventDispatcher initialize = new EventDispatcher("initialize");
 
+    private static final String RESOLUTION_STORE_FILE =
+        "sofia-resolutions.txt";
+
+    // Saves the handler resolutions made so far whenever a screen is paused,
+    // which is the last point at which the process is sure to be alive.
+    private static final LifecycleInjection resolutionSaver =
+        new LifecycleInjection() {
+            @Override
+            public void pause()
+            {
+                ResolutionStore.getInstance().saveInBackground();
+            }
+        };
+
 
     //~ Constructors ..........................................................
 
@@ -99,11 +116,55 @@ public class ScreenMixin
         this.activity = activity;
         this.instanceData = new Bundle();
         this.injections = new WeakHashMap<LifecycleInjection, Void>();
+
+        openResolutionStore(activity);
+        addLifecycleInjection(resolutionSaver);
     }
 
 
     //~ Methods ...............................................................
 
+    // ----------------------------------------------------------
+    /**
+     * Opens the process-wide handler resolution store the first time a
+     * screen is created, keyed by the application's version and the
+     * modification time of its package, so that any rebuild or update
+     * invalidates it. Finding those and loading the store both read from
+     * disk, so they happen on the store's background thread; until they are
+     * done, handlers are resolved as usual.
+     *
+     * @param context the context of the screen being created
+     */
+    private static void openResolutionStore(Context context)
+    {
+        ResolutionStore store = ResolutionStore.getInstance();
+
+        if (!store.isOpen())
+        {
+            final Context appContext = context.getApplicationContext();
+
+            store.openInBackground(new ResolutionStore.Location() {
+                public File getFile()
+                {
+                    return new File(
+                            appContext.getCacheDir(), RESOLUTION_STORE_FILE);
+                }
+
+                public String getFingerprint() throws Exception
+                {
+                    PackageInfo info = appContext.getPackageManager()
+                            .getPackageInfo(appContext.getPackageName(), 0);
+                    long apkTime = new File(
+                            appContext.getPackageCodePath()).lastModified();
+
+                    return info.versionCode + "/" + info.versionName + "/"
+                            + apkTime;
+                }
+            });
+        }
+    }
+
+
     // ----------------------------------------------------------
     public static ScreenMixin getMixin(Context context)
     {
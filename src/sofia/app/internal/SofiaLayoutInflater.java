@@ -16,6 +16,8 @@
 
 package sofia.app.internal;
 
+import sofia.internal.ClassIndex;
+
 import android.content.Context;
 import android.util.AttributeSet;
 import android.view.LayoutInflater;
@@ -90,17 +92,17 @@ public class SofiaLayoutInflater extends LayoutInflater
     // ----------------------------------------------------------
     private void bindField(View view)
     {
-        Class<?> receiverClass = receiver.getClass();
-
         String id = getIdName(getContext(), view.getId());
 
         if (id != null)
         {
             try
             {
-                Field field = receiverClass.getDeclaredField(id);
+                Field field = ClassIndex.forClass(
+                        receiver.getClass()).getDeclaredField(id);
 
-                if (field.getType().isAssignableFrom(view.getClass()))
+                if (field != null
+                        && field.getType().isAssignableFrom(view.getClass()))
                 {
                     field.setAccessible(true);
                     field.set(receiver, view);
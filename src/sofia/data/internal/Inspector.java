@@ -17,6 +17,7 @@
 package sofia.data.internal;
 
 import sofia.data.PropertyEditor;
+import sofia.internal.ClassIndex;
 
 import java.lang.reflect.Method;
 import java.util.ArrayList;
@@ -38,9 +39,11 @@ public class Inspector
 		
 		properties = new ArrayList<PropertyEditor>();
 
-		for (Method method : type.getMethods())
+		ClassIndex index = ClassIndex.forClass(type);
+
+		for (Method method : index.getPublicMethods())
 		{
-			tryToAddProperty(type, method);
+			tryToAddProperty(index, method);
 		}
 		
 		Collections.sort(properties);
@@ -48,7 +51,7 @@ public class Inspector
 	
 	
 	// ----------------------------------------------------------
-	private void tryToAddProperty(Class<?> type, Method method)
+	private void tryToAddProperty(ClassIndex index, Method method)
 	{
 		String name = method.getName();
 		Class<?> valueType = method.getReturnType();
@@ -75,10 +78,11 @@ public class Inspector
 			{
 				// Find a setter with a matching name.
 
-				Method possibleSetter = type.getMethod(
+				Method possibleSetter = index.getPublicMethod(
 						"set" + propertyName, valueType);
 
-				if (Void.TYPE.equals(possibleSetter.getReturnType())
+				if (possibleSetter != null
+						&& Void.TYPE.equals(possibleSetter.getReturnType())
 						&& possibleSetter.getParameterTypes().length == 1
 						&& possibleSetter.getParameterTypes()[0].equals(
 								valueType))
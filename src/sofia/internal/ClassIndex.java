@@ -0,0 +1,364 @@
+/*
+ * Copyright (C) 2011 Virginia Tech Department of Computer Science
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package sofia.internal;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+//-------------------------------------------------------------------------
+/**
+ * <p>
+ * A cached index of the reflective information about a class that Sofia
+ * looks up repeatedly: methods grouped by name, annotated methods, and
+ * fields by name. Each kind of information is gathered from the class the
+ * first time it is requested and then reused, so that event dispatch,
+ * property inspection, and layout binding do not scan the same class over
+ * and over.
+ * </p><p>
+ * Indexes are shared process-wide; use {@link #forClass(Class)} to obtain
+ * one. All methods are safe to call from any thread.
+ * </p>
+ */
+public class ClassIndex
+{
+    //~ Fields ................................................................
+
+    // Bounded, so that the number of indexes stays limited. An index refers
+    // to its class and the class's members, so an indexed class stays loaded
+    // until its index is evicted; an evicted index is rebuilt when needed.
+    private static final WeakCache<Class<?>, ClassIndex> indexes =
+            new WeakCache<Class<?>, ClassIndex>(256);
+
+    // Placeholder stored in the annotated method map for annotations that no
+    // method has, since ConcurrentHashMap does not permit null values.
+    private static final Method NO_METHOD;
+
+    private final Class<?> type;
+
+    private volatile Map<String, List<Method>> methodsByName;
+    private volatile Method[] publicMethods;
+    private volatile Map<String, List<Method>> publicMethodsByName;
+    private volatile Map<String, Field> declaredFields;
+    private volatile Map<String, Field> publicFields;
+    private final ConcurrentHashMap<Class<? extends Annotation>, Method>
+        annotatedMethods =
+            new ConcurrentHashMap<Class<? extends Annotation>, Method>();
+
+    static
+    {
+        try
+        {
+            NO_METHOD = Object.class.getMethod("toString");
+        }
+        catch (NoSuchMethodException e)
+        {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+
+    //~ Constructors ..........................................................
+
+    // ----------------------------------------------------------
+    private ClassIndex(Class<?> type)
+    {
+        this.type = type;
+    }
+
+
+    //~ Public methods ........................................................
+
+    // ----------------------------------------------------------
+    /**
+     * Gets the shared index for the specified class.
+     *
+     * @param type the class
+     * @return the index for the class
+     */
+    public static ClassIndex forClass(Class<?> type)
+    {
+        ClassIndex index = indexes.get(type);
+
+        if (index == null)
+        {
+            index = new ClassIndex(type);
+
+            ClassIndex existing = indexes.putIfAbsent(type, index);
+            if (existing != null)
+            {
+                index = existing;
+            }
+        }
+
+        return index;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Gets the class that this index describes.
+     *
+     * @return the class that this index describes
+     */
+    public Class<?> getType()
+    {
+        return type;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Gets all methods with the specified name that are declared on the
+     * class or any of its superclasses, regardless of their visibility. The
+     * methods are ordered from the most derived class to the least, and in
+     * declaration order within a class (as reported by
+     * {@link Class#getDeclaredMethods()}).
+     *
+     * @param name the name of the methods to find
+     * @return an unmodifiable list of the methods with that name, which is
+     *     empty if there are none
+     */
+    public List<Method> getMethodsNamed(String name)
+    {
+        Map<String, List<Method>> methods = methodsByName;
+
+        if (methods == null)
+        {
+            methods = new HashMap<String, List<Method>>();
+
+            for (Class<?> c = type; c != null; c = c.getSuperclass())
+            {
+                for (Method method : c.getDeclaredMethods())
+                {
+                    addToGroup(methods, method.getName(), method);
+                }
+            }
+
+            methodsByName = methods = freezeGroups(methods);
+        }
+
+        List<Method> result = methods.get(name);
+        return (result != null) ? result : Collections.<Method>emptyList();
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Gets the public methods of the class, including those inherited from
+     * superclasses and interfaces, as reported by {@link Class#getMethods()}.
+     * The returned array is shared and must not be modified.
+     *
+     * @return the public methods of the class
+     */
+    public Method[] getPublicMethods()
+    {
+        Method[] methods = publicMethods;
+
+        if (methods == null)
+        {
+            publicMethods = methods = type.getMethods();
+        }
+
+        return methods;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Gets the public method with the specified name and parameter types,
+     * like {@link Class#getMethod(String, Class...)} but returning null
+     * instead of throwing an exception if there is no such method.
+     *
+     * @param name the name of the method
+     * @param parameterTypes the parameter types of the method
+     * @return the method, or null if the class has no such public method
+     */
+    public Method getPublicMethod(String name, Class<?>... parameterTypes)
+    {
+        Map<String, List<Method>> methods = publicMethodsByName;
+
+        if (methods == null)
+        {
+            methods = new HashMap<String, List<Method>>();
+
+            for (Method method : getPublicMethods())
+            {
+                addToGroup(methods, method.getName(), method);
+            }
+
+            publicMethodsByName = methods = freezeGroups(methods);
+        }
+
+        List<Method> candidates = methods.get(name);
+        Method match = null;
+
+        if (candidates != null)
+        {
+            for (Method candidate : candidates)
+            {
+                if (Arrays.equals(
+                        candidate.getParameterTypes(), parameterTypes))
+                {
+                    // Prefer a real method over a compiler-generated bridge
+                    // with the same parameters.
+                    if (match == null || match.isBridge())
+                    {
+                        match = candidate;
+                    }
+                }
+            }
+        }
+
+        return match;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Gets the first public method of the class (in the order reported by
+     * {@link Class#getMethods()}) that has the specified annotation.
+     *
+     * @param annotation the annotation to look for
+     * @return the annotated method, or null if there is none
+     */
+    public Method getAnnotatedMethod(Class<? extends Annotation> annotation)
+    {
+        Method method = annotatedMethods.get(annotation);
+
+        if (method == null)
+        {
+            method = NO_METHOD;
+
+            for (Method currentMethod : getPublicMethods())
+            {
+                if (currentMethod.getAnnotation(annotation) != null)
+                {
+                    method = currentMethod;
+                    break;
+                }
+            }
+
+            annotatedMethods.put(annotation, method);
+        }
+
+        return (method != NO_METHOD) ? method : null;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Gets the field with the specified name that is declared directly on
+     * the class, regardless of its visibility, like
+     * {@link Class#getDeclaredField(String)} but returning null instead of
+     * throwing an exception if there is no such field.
+     *
+     * @param name the name of the field
+     * @return the field, or null if the class does not declare it
+     */
+    public Field getDeclaredField(String name)
+    {
+        Map<String, Field> fields = declaredFields;
+
+        if (fields == null)
+        {
+            declaredFields = fields =
+                    fieldsByName(type.getDeclaredFields());
+        }
+
+        return fields.get(name);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Gets the public field with the specified name, including inherited
+     * fields, like {@link Class#getField(String)} but returning null instead
+     * of throwing an exception if there is no such field.
+     *
+     * @param name the name of the field
+     * @return the field, or null if the class has no such public field
+     */
+    public Field getPublicField(String name)
+    {
+        Map<String, Field> fields = publicFields;
+
+        if (fields == null)
+        {
+            publicFields = fields = fieldsByName(type.getFields());
+        }
+
+        return fields.get(name);
+    }
+
+
+    //~ Private methods .......................................................
+
+    // ----------------------------------------------------------
+    private static void addToGroup(
+            Map<String, List<Method>> groups, String name, Method method)
+    {
+        List<Method> group = groups.get(name);
+
+        if (group == null)
+        {
+            group = new ArrayList<Method>(1);
+            groups.put(name, group);
+        }
+
+        group.add(method);
+    }
+
+
+    // ----------------------------------------------------------
+    private static Map<String, List<Method>> freezeGroups(
+            Map<String, List<Method>> groups)
+    {
+        for (Map.Entry<String, List<Method>> entry : groups.entrySet())
+        {
+            entry.setValue(Collections.unmodifiableList(entry.getValue()));
+        }
+
+        return groups;
+    }
+
+
+    // ----------------------------------------------------------
+    private static Map<String, Field> fieldsByName(Field[] fields)
+    {
+        Map<String, Field> map = new HashMap<String, Field>();
+
+        for (Field field : fields)
+        {
+            // Keep the first field with a given name, which is the one that
+            // getField would find for a hidden field.
+            if (!map.containsKey(field.getName()))
+            {
+                map.put(field.getName(), field);
+            }
+        }
+
+        return map;
+    }
+}
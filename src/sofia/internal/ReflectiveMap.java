@@ -123,27 +123,13 @@ public class ReflectiveMap implements Map<String, Object>
 
     private Method findMethod(String name)
     {
-        try
-        {
-            return referent.getClass().getMethod(name);
-        }
-        catch (NoSuchMethodException e)
-        {
-            return null;
-        }
+        return ClassIndex.forClass(referent.getClass()).getPublicMethod(name);
     }
 
 
     private Field findField(String name)
     {
-        try
-        {
-            return referent.getClass().getField(name);
-        }
-        catch (NoSuchFieldException e)
-        {
-            return null;
-        }
+        return ClassIndex.forClass(referent.getClass()).getPublicField(name);
     }
 
 
@@ -0,0 +1,424 @@
+/*
+ * Copyright (C) 2011 Virginia Tech Department of Computer Science
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package sofia.internal;
+
+import java.lang.ref.WeakReference;
+
+//-------------------------------------------------------------------------
+/**
+ * <p>
+ * A bounded, thread-safe cache with weakly referenced keys, intended for
+ * caches keyed by {@link Class} that are read on every event. Keys are
+ * compared by identity and must not be null; values are held strongly, so a
+ * value that has been cached is returned until it is replaced, evicted, or
+ * its key is collected.
+ * </p><p>
+ * Lookups take no lock and do not allocate: the entries live in an
+ * open-addressed table that is never modified once it has been published.
+ * Writers, which are expected to be rare (a cache is normally written once
+ * per key), build a replacement table under a lock and publish it with a
+ * single volatile write. A reader that races with a writer may miss an entry
+ * that is being added, so callers that need a single value per key should
+ * follow a missed {@link #get(Object)} with {@link #putIfAbsent(Object,
+ * Object)} and use the value that it returns.
+ * </p><p>
+ * When the cache holds its maximum number of entries, adding another evicts
+ * one that has not been read since the eviction sweep last passed it (the
+ * "clock" approximation of least-recently-used). Entries whose key has been
+ * collected are dropped the next time the cache is written. A value that
+ * refers back to its key (such as a {@code Method} declared by the key
+ * class) keeps the key reachable, so such entries are only released by
+ * eviction; the size bound is what limits how many of them the cache keeps.
+ * </p><p>
+ * Unlike {@link MRUMap}, this class does not implement {@code Map}; it only
+ * supports the operations that caches need, plus counts of the entries it
+ * has evicted and dropped. Lookups are not counted, so that a read never
+ * writes to memory that other threads read.
+ * </p>
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ */
+public class WeakCache<K, V>
+{
+    //~ Fields ................................................................
+
+    private static final int INITIAL_CAPACITY = 4;
+
+    private final int maxSize;
+
+    // Replaced, never modified, once it has been published. At most half of
+    // the slots are occupied, so every probe sequence reaches an empty slot.
+    private volatile Entry<K, V>[] table;
+
+    // The following are only written while holding the cache's lock.
+    private int size;
+    private int clockHand;
+    private long evictions;
+    private long collections;
+
+
+    //~ Constructors ..........................................................
+
+    // ----------------------------------------------------------
+    /**
+     * Creates a new, empty cache.
+     *
+     * @param maxSize the maximum number of entries the cache will hold
+     */
+    public WeakCache(int maxSize)
+    {
+        if (maxSize < 1)
+        {
+            throw new IllegalArgumentException(
+                    "maxSize must be positive: " + maxSize);
+        }
+
+        this.maxSize = maxSize;
+        this.table = newTable(INITIAL_CAPACITY);
+    }
+
+
+    //~ Public methods ........................................................
+
+    // ----------------------------------------------------------
+    /**
+     * Gets the value cached for a key. This takes no lock and does not
+     * allocate.
+     *
+     * @param key the key
+     * @return the value, or null if the key is not in the cache
+     */
+    public V get(K key)
+    {
+        Entry<K, V>[] entries = table;
+        int mask = entries.length - 1;
+
+        for (int i = hash(key) & mask; ; i = (i + 1) & mask)
+        {
+            Entry<K, V> entry = entries[i];
+
+            if (entry == null)
+            {
+                return null;
+            }
+            else if (entry.get() == key)
+            {
+                // Only write the flag when it changes, so that the entries
+                // of a hot key are not written on every read.
+                if (!entry.referenced)
+                {
+                    entry.referenced = true;
+                }
+
+                return entry.value;
+            }
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Caches a value for a key, replacing any existing value.
+     *
+     * @param key the key
+     * @param value the value
+     */
+    public synchronized void put(K key, V value)
+    {
+        Entry<K, V> existing = find(key);
+        publish(new Entry<K, V>(key, value), existing);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Caches a value for a key unless a value is already cached for it.
+     *
+     * @param key the key
+     * @param value the value to cache if there is none
+     * @return the value that was already cached, or null if the new value
+     *     was added
+     */
+    public synchronized V putIfAbsent(K key, V value)
+    {
+        Entry<K, V> existing = find(key);
+
+        if (existing != null)
+        {
+            existing.referenced = true;
+            return existing.value;
+        }
+
+        publish(new Entry<K, V>(key, value), null);
+        return null;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Removes every entry from the cache. The counters are not reset.
+     */
+    public synchronized void clear()
+    {
+        table = newTable(INITIAL_CAPACITY);
+        size = 0;
+        clockHand = 0;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Gets the number of entries in the cache, including any whose key has
+     * been collected but not yet removed.
+     *
+     * @return the number of entries
+     */
+    public synchronized int size()
+    {
+        return size;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Gets the maximum number of entries the cache will hold.
+     *
+     * @return the maximum size
+     */
+    public int getMaxSize()
+    {
+        return maxSize;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Gets the number of entries removed to keep the cache within its
+     * maximum size.
+     *
+     * @return the number of evictions
+     */
+    public synchronized long getEvictions()
+    {
+        return evictions;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Gets the number of entries removed because the garbage collector
+     * reclaimed their key.
+     *
+     * @return the number of collected entries
+     */
+    public synchronized long getCollections()
+    {
+        return collections;
+    }
+
+
+    // ----------------------------------------------------------
+    @Override
+    public synchronized String toString()
+    {
+        return "size=" + size + "/" + maxSize + " evictions=" + evictions
+                + " collected=" + collections;
+    }
+
+
+    //~ Private methods .......................................................
+
+    // ----------------------------------------------------------
+    @SuppressWarnings("unchecked")
+    private static <K, V> Entry<K, V>[] newTable(int capacity)
+    {
+        return new Entry[capacity];
+    }
+
+
+    // ----------------------------------------------------------
+    private static int hash(Object key)
+    {
+        int h = System.identityHashCode(key);
+        return h ^ (h >>> 16);
+    }
+
+
+    // ----------------------------------------------------------
+    private Entry<K, V> find(K key)
+    {
+        if (key == null)
+        {
+            throw new NullPointerException("key");
+        }
+
+        Entry<K, V>[] entries = table;
+        int mask = entries.length - 1;
+
+        for (int i = hash(key) & mask; ; i = (i + 1) & mask)
+        {
+            Entry<K, V> entry = entries[i];
+
+            if (entry == null || entry.get() == key)
+            {
+                return entry;
+            }
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Builds and publishes a new table that holds every live entry of the
+     * current one except {@code replaced}, plus {@code added}. Entries whose
+     * key has been collected are dropped, and if the cache is full, one more
+     * entry is evicted to make room.
+     *
+     * @param added the entry to add
+     * @param replaced an entry to leave out, or null
+     */
+    private void publish(Entry<K, V> added, Entry<K, V> replaced)
+    {
+        Entry<K, V>[] oldTable = table;
+        int live = 0;
+
+        for (Entry<K, V> entry : oldTable)
+        {
+            if (entry != null && entry != replaced)
+            {
+                if (entry.get() != null)
+                {
+                    live++;
+                }
+                else
+                {
+                    collections++;
+                }
+            }
+        }
+
+        Entry<K, V> victim = (live >= maxSize)
+                ? chooseVictim(oldTable, replaced) : null;
+
+        if (victim != null)
+        {
+            live--;
+            evictions++;
+        }
+
+        int capacity = INITIAL_CAPACITY;
+        while (capacity < (live + 1) * 2)
+        {
+            capacity *= 2;
+        }
+
+        Entry<K, V>[] newTable = newTable(capacity);
+
+        for (Entry<K, V> entry : oldTable)
+        {
+            if (entry != null && entry != replaced && entry != victim
+                    && entry.get() != null)
+            {
+                insert(newTable, entry);
+            }
+        }
+
+        insert(newTable, added);
+
+        size = live + 1;
+        clockHand &= capacity - 1;
+        table = newTable;
+    }
+
+
+    // ----------------------------------------------------------
+    private static <K, V> void insert(Entry<K, V>[] entries, Entry<K, V> entry)
+    {
+        int mask = entries.length - 1;
+        int i = entry.hash & mask;
+
+        while (entries[i] != null)
+        {
+            i = (i + 1) & mask;
+        }
+
+        entries[i] = entry;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Sweeps the table from the clock hand, giving each referenced entry a
+     * second chance, and returns the first live entry that has not been
+     * referenced since the last sweep.
+     *
+     * @param entries the table to sweep
+     * @param excluded an entry that must not be chosen, or null
+     * @return the entry to evict
+     */
+    private Entry<K, V> chooseVictim(
+            Entry<K, V>[] entries, Entry<K, V> excluded)
+    {
+        int mask = entries.length - 1;
+        clockHand &= mask;
+
+        // Two full passes are always enough: the first clears every
+        // reference bit that the second would stop at.
+        for (int step = 0; step < entries.length * 2; step++)
+        {
+            Entry<K, V> entry = entries[clockHand];
+            clockHand = (clockHand + 1) & mask;
+
+            if (entry == null || entry == excluded || entry.get() == null)
+            {
+                continue;
+            }
+            else if (entry.referenced)
+            {
+                entry.referenced = false;
+            }
+            else
+            {
+                return entry;
+            }
+        }
+
+        return null;
+    }
+
+
+    //~ Inner classes .........................................................
+
+    // ----------------------------------------------------------
+    private static class Entry<K, V> extends WeakReference<K>
+    {
+        private final int hash;
+        private final V value;
+        private boolean referenced;
+
+
+        // ----------------------------------------------------------
+        public Entry(K key, V value)
+        {
+            super(key);
+
+            this.hash = hash(key);
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,335 @@
+/*
+ * Copyright (C) 2011 Virginia Tech Department of Computer Science
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package sofia.internal.events;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import sofia.app.Background;
+import sofia.app.internal.LifecycleInjection;
+import sofia.app.internal.ScreenMixin;
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+
+//-------------------------------------------------------------------------
+/**
+ * <p>
+ * An invoker for handlers marked {@link Background}. Instead of calling the
+ * handler, {@link #invoke(Object, Object...)} queues the call on a small,
+ * bounded pool of background threads and returns immediately. When the
+ * handler finishes, its follow-up method (if any) is dispatched on the main
+ * thread with the handler's result, and any exception it threw is rethrown
+ * on the main thread, just as it would have been if the handler had run
+ * there.
+ * </p><p>
+ * If the receiver is a screen, the pending and running calls for it are
+ * tracked by a {@link LifecycleInjection} and cancelled when the screen is
+ * destroyed. If the pool's queue is full, the handler runs on the calling
+ * thread, as it would without the annotation.
+ * </p>
+ */
+class BackgroundInvoker extends MethodInvoker
+{
+    //~ Fields ................................................................
+
+    private static final int THREAD_COUNT = Math.max(2,
+            Math.min(4, Runtime.getRuntime().availableProcessors()));
+    private static final int QUEUE_CAPACITY = 128;
+
+    private static final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+            THREAD_COUNT, THREAD_COUNT, 0, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<Runnable>(QUEUE_CAPACITY),
+            new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                public Thread newThread(final Runnable task)
+                {
+                    Thread thread = new Thread(new Runnable() {
+                        public void run()
+                        {
+                            Process.setThreadPriority(
+                                    Process.THREAD_PRIORITY_BACKGROUND);
+                            task.run();
+                        }
+                    }, "Sofia background #" + count.incrementAndGet());
+
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            },
+            new ThreadPoolExecutor.CallerRunsPolicy());
+
+    private static final Handler mainHandler =
+            new Handler(Looper.getMainLooper());
+
+    // The task groups for receivers that are screens, so that their work can
+    // be cancelled when they are destroyed.
+    private static final Map<Object, TaskGroup> taskGroups =
+            new WeakHashMap<Object, TaskGroup>();
+
+    private final MethodInvoker target;
+    private final EventDispatcher continuation;
+    private final boolean returnsVoid;
+
+
+    //~ Constructors ..........................................................
+
+    // ----------------------------------------------------------
+    /**
+     * Initializes a new background invoker.
+     *
+     * @param target the invoker that calls the handler
+     * @param annotation the annotation on the handler
+     */
+    public BackgroundInvoker(MethodInvoker target, Background annotation)
+    {
+        super(target.getMethod());
+
+        this.target = target;
+        this.returnsVoid = target.getMethod().getReturnType() == void.class;
+        this.continuation = annotation.then().length() > 0
+                ? new OptionalEventDispatcher(annotation.then())
+                : null;
+    }
+
+
+    //~ Public methods ........................................................
+
+    // ----------------------------------------------------------
+    /**
+     * Queues the handler to run in the background.
+     *
+     * @param receiver the object on which to invoke the method
+     * @param args the arguments to pass to the method
+     * @return null, since the handler has not been called yet
+     */
+    @Override
+    public Object invoke(final Object receiver, Object... args)
+    {
+        // Dispatchers may reuse their argument arrays.
+        final Object[] argsCopy = args.clone();
+        final TaskGroup group = taskGroupFor(receiver);
+
+        FutureTask<Object> task = new FutureTask<Object>(new Runnable() {
+            public void run()
+            {
+                Object result;
+
+                try
+                {
+                    result = target.invoke(receiver, argsCopy);
+                }
+                catch (RuntimeException e)
+                {
+                    if (!isInterrupted(group))
+                    {
+                        rethrowOnMainThread(e);
+                    }
+
+                    return;
+                }
+                catch (Error e)
+                {
+                    rethrowOnMainThread(e);
+                    return;
+                }
+
+                if (continuation != null && !isInterrupted(group))
+                {
+                    postContinuation(receiver, result, group);
+                }
+            }
+        }, null) {
+            @Override
+            protected void done()
+            {
+                if (group != null)
+                {
+                    group.remove(this);
+                }
+            }
+        };
+
+        if (group != null)
+        {
+            group.add(task);
+        }
+
+        executor.execute(task);
+
+        return null;
+    }
+
+
+    //~ Private methods .......................................................
+
+    // ----------------------------------------------------------
+    private static TaskGroup taskGroupFor(Object receiver)
+    {
+        if (!(receiver instanceof Context))
+        {
+            return null;
+        }
+
+        synchronized (taskGroups)
+        {
+            TaskGroup group = taskGroups.get(receiver);
+
+            if (group == null)
+            {
+                group = new TaskGroup();
+
+                if (ScreenMixin.tryToAddLifecycleInjection(
+                        (Context) receiver, group))
+                {
+                    taskGroups.put(receiver, group);
+                }
+                else
+                {
+                    group = null;
+                }
+            }
+
+            return group;
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    private static boolean isInterrupted(TaskGroup group)
+    {
+        return Thread.currentThread().isInterrupted()
+                || (group != null && group.isDestroyed());
+    }
+
+
+    // ----------------------------------------------------------
+    private void postContinuation(
+            final Object receiver, final Object result, final TaskGroup group)
+    {
+        mainHandler.post(new Runnable() {
+            public void run()
+            {
+                if (group == null || !group.isDestroyed())
+                {
+                    if (returnsVoid)
+                    {
+                        continuation.dispatch(receiver);
+                    }
+                    else
+                    {
+                        continuation.dispatch(receiver, result);
+                    }
+                }
+            }
+        });
+    }
+
+
+    // ----------------------------------------------------------
+    private static void rethrowOnMainThread(final Throwable e)
+    {
+        mainHandler.post(new Runnable() {
+            public void run()
+            {
+                if (e instanceof Error)
+                {
+                    throw (Error) e;
+                }
+                else
+                {
+                    throw (RuntimeException) e;
+                }
+            }
+        });
+    }
+
+
+    //~ Inner classes .........................................................
+
+    // ----------------------------------------------------------
+    /**
+     * The background work queued for a single screen, which is cancelled
+     * when the screen is destroyed.
+     */
+    private static class TaskGroup extends LifecycleInjection
+    {
+        private final Set<Future<?>> tasks = new HashSet<Future<?>>();
+        private volatile boolean destroyed;
+
+
+        // ----------------------------------------------------------
+        public synchronized void add(Future<?> task)
+        {
+            if (destroyed)
+            {
+                task.cancel(false);
+            }
+            else
+            {
+                tasks.add(task);
+            }
+        }
+
+
+        // ----------------------------------------------------------
+        public synchronized void remove(Future<?> task)
+        {
+            tasks.remove(task);
+        }
+
+
+        // ----------------------------------------------------------
+        public boolean isDestroyed()
+        {
+            return destroyed;
+        }
+
+
+        // ----------------------------------------------------------
+        @Override
+        public void destroy()
+        {
+            Future<?>[] pending;
+
+            synchronized (this)
+            {
+                destroyed = true;
+                pending = tasks.toArray(new Future<?>[tasks.size()]);
+                tasks.clear();
+            }
+
+            // Cancelling outside the lock, since a cancelled task removes
+            // itself from the group.
+            for (Future<?> task : pending)
+            {
+                task.cancel(true);
+            }
+        }
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright (C) 2011 Virginia Tech Department of Computer Science
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package sofia.internal.events;
+
+import java.lang.reflect.Array;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import sofia.app.Coalesced;
+import android.view.MotionEvent;
+
+//-------------------------------------------------------------------------
+/**
+ * <p>
+ * An invoker for handlers marked {@link Coalesced}. Instead of calling the
+ * handler, {@link #invoke(Object, Object...)} records the arguments for the
+ * receiver and schedules a frame callback through the default
+ * {@link FrameScheduler}; the handler is then called once per receiver per
+ * frame, no matter how many events arrived.
+ * </p><p>
+ * Arguments are copied when they are recorded, because dispatchers reuse
+ * their argument arrays and sample buffers between events. Motion events are
+ * copied with {@link MotionEvent#obtain(MotionEvent)} and recycled after
+ * delivery, since the framework recycles the originals.
+ * </p>
+ */
+class CoalescingInvoker extends MethodInvoker implements Runnable
+{
+    //~ Fields ................................................................
+
+    private final MethodInvoker target;
+    private final boolean accumulate;
+
+    // Pending arguments by receiver. The two maps are swapped on each frame
+    // so that delivering one frame does not allocate.
+    private Map<Object, Object[]> pending =
+            new IdentityHashMap<Object, Object[]>();
+    private Map<Object, Object[]> delivering =
+            new IdentityHashMap<Object, Object[]>();
+    private boolean scheduled;
+
+
+    //~ Constructors ..........................................................
+
+    // ----------------------------------------------------------
+    /**
+     * Initializes a new coalescing invoker.
+     *
+     * @param target the invoker that calls the handler
+     * @param mode how arguments from the same frame are combined
+     */
+    public CoalescingInvoker(MethodInvoker target, Coalesced.Mode mode)
+    {
+        super(target.getMethod());
+
+        this.target = target;
+        this.accumulate = mode == Coalesced.Mode.ACCUMULATE
+                && canAccumulate(target.getMethod().getParameterTypes());
+    }
+
+
+    //~ Public methods ........................................................
+
+    // ----------------------------------------------------------
+    /**
+     * Records the arguments for delivery in the next frame.
+     *
+     * @param receiver the object on which to invoke the method
+     * @param args the arguments to pass to the method
+     * @return null, since the handler has not been called yet
+     */
+    @Override
+    public Object invoke(Object receiver, Object... args)
+    {
+        synchronized (this)
+        {
+            Object[] previous = pending.get(receiver);
+
+            if (accumulate && previous != null)
+            {
+                append(previous, args);
+            }
+            else
+            {
+                pending.put(receiver, copyOf(args));
+                release(previous);
+            }
+
+            if (!scheduled)
+            {
+                scheduled = true;
+                FrameScheduler.getDefault().postFrameCallback(this);
+            }
+        }
+
+        return null;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Delivers the pending arguments for every receiver.
+     */
+    public void run()
+    {
+        Map<Object, Object[]> batch;
+
+        synchronized (this)
+        {
+            batch = pending;
+            pending = delivering;
+            delivering = batch;
+            scheduled = false;
+        }
+
+        Iterator<Map.Entry<Object, Object[]>> entries =
+                batch.entrySet().iterator();
+
+        try
+        {
+            while (entries.hasNext())
+            {
+                Map.Entry<Object, Object[]> entry = entries.next();
+                Object[] args = entry.getValue();
+
+                try
+                {
+                    target.invoke(entry.getKey(), args);
+                }
+                finally
+                {
+                    release(args);
+                }
+            }
+        }
+        finally
+        {
+            // If a handler threw, the receivers after it are not called, but
+            // the events copied for them must still be recycled.
+            while (entries.hasNext())
+            {
+                release(entries.next().getValue());
+            }
+
+            batch.clear();
+        }
+    }
+
+
+    //~ Private methods .......................................................
+
+    // ----------------------------------------------------------
+    /**
+     * Gets a value indicating whether a parameter list is one or more arrays
+     * followed by an int count.
+     */
+    private static boolean canAccumulate(Class<?>[] types)
+    {
+        if (types.length < 2 || types[types.length - 1] != int.class)
+        {
+            return false;
+        }
+
+        for (int i = 0; i < types.length - 1; i++)
+        {
+            if (!types[i].isArray())
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+
+    // ----------------------------------------------------------
+    private static Object[] copyOf(Object[] args)
+    {
+        Object[] copy = new Object[args.length];
+
+        for (int i = 0; i < args.length; i++)
+        {
+            Object arg = args[i];
+
+            if (arg instanceof MotionEvent)
+            {
+                arg = MotionEvent.obtain((MotionEvent) arg);
+            }
+            else if (arg != null && arg.getClass().isArray())
+            {
+                int length = Array.getLength(arg);
+                Object array = Array.newInstance(
+                        arg.getClass().getComponentType(), length);
+                System.arraycopy(arg, 0, array, 0, length);
+                arg = array;
+            }
+
+            copy[i] = arg;
+        }
+
+        return copy;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Appends the first {@code count} elements of each array argument to the
+     * pending arguments, and adds the counts.
+     */
+    private static void append(Object[] pendingArgs, Object[] args)
+    {
+        int last = pendingArgs.length - 1;
+        int oldCount = (Integer) pendingArgs[last];
+        int newCount = (Integer) args[last];
+
+        for (int i = 0; i < last; i++)
+        {
+            Object array = Array.newInstance(
+                    pendingArgs[i].getClass().getComponentType(),
+                    oldCount + newCount);
+            System.arraycopy(pendingArgs[i], 0, array, 0, oldCount);
+            System.arraycopy(args[i], 0, array, oldCount, newCount);
+            pendingArgs[i] = array;
+        }
+
+        pendingArgs[last] = oldCount + newCount;
+    }
+
+
+    // ----------------------------------------------------------
+    private static void release(Object[] args)
+    {
+        if (args != null)
+        {
+            for (Object arg : args)
+            {
+                if (arg instanceof MotionEvent)
+                {
+                    ((MotionEvent) arg).recycle();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,649 @@
+/*
+ * Copyright (C) 2011 Virginia Tech Department of Computer Science
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package sofia.internal.events;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+//-------------------------------------------------------------------------
+/**
+ * <p>
+ * Optional instrumentation for event dispatch. When enabled with
+ * {@link #enable()}, every {@link EventDispatcher} records its cache hits
+ * and misses, the time spent resolving handlers, and the latency of every
+ * handler invocation, keyed by receiver class and method name. Repeating
+ * {@link sofia.util.Timer} callbacks also record when they overrun their
+ * period.
+ * </p><p>
+ * Latencies are kept in log-linear histograms (in the style of HDR
+ * histograms) with a fixed footprint and about 12% relative precision, so
+ * recording is cheap and never allocates. When metrics are disabled, the
+ * only cost to dispatch is a single volatile read.
+ * </p><p>
+ * The data can be queried through {@link #getHandlerStats()} or written out
+ * in a readable form with {@link #dump(File)}.
+ * </p>
+ */
+public class DispatchMetrics
+{
+    //~ Fields ................................................................
+
+    private static volatile DispatchMetrics current;
+
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong cacheMisses = new AtomicLong();
+    private final Histogram resolutionTimes = new Histogram();
+
+    private final ConcurrentHashMap<Class<?>,
+        ConcurrentHashMap<String, HandlerStats>> handlers =
+            new ConcurrentHashMap<Class<?>,
+                ConcurrentHashMap<String, HandlerStats>>();
+
+
+    //~ Constructors ..........................................................
+
+    // ----------------------------------------------------------
+    private DispatchMetrics()
+    {
+        // Use enable() to create an instance.
+    }
+
+
+    //~ Public methods ........................................................
+
+    // ----------------------------------------------------------
+    /**
+     * Starts recording dispatch metrics, if they are not already being
+     * recorded.
+     *
+     * @return the metrics being recorded
+     */
+    public static synchronized DispatchMetrics enable()
+    {
+        if (current == null)
+        {
+            current = new DispatchMetrics();
+        }
+
+        return current;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Stops recording dispatch metrics. Data that was already recorded
+     * remains available from the object returned by {@link #enable()}.
+     */
+    public static synchronized void disable()
+    {
+        current = null;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Gets the metrics currently being recorded.
+     *
+     * @return the metrics being recorded, or null if metrics are disabled
+     */
+    public static DispatchMetrics getCurrent()
+    {
+        return current;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Gets the number of dispatches whose handlers were found in a cache.
+     *
+     * @return the number of cache hits
+     */
+    public long getCacheHits()
+    {
+        return cacheHits.get();
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Gets the number of dispatches that had to resolve their handlers
+     * reflectively.
+     *
+     * @return the number of cache misses
+     */
+    public long getCacheMisses()
+    {
+        return cacheMisses.get();
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Gets the histogram of handler resolution times, in nanoseconds, over
+     * all receivers and methods.
+     *
+     * @return the resolution time histogram
+     */
+    public Histogram getResolutionTimes()
+    {
+        return resolutionTimes;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Gets the statistics for every handler that has been resolved or
+     * invoked, sorted with the slowest (by 99th percentile latency) first.
+     *
+     * @return a new list of handler statistics
+     */
+    public List<HandlerStats> getHandlerStats()
+    {
+        List<HandlerStats> stats = new ArrayList<HandlerStats>();
+
+        for (Map<String, HandlerStats> methods : handlers.values())
+        {
+            stats.addAll(methods.values());
+        }
+
+        Collections.sort(stats, new Comparator<HandlerStats>() {
+            public int compare(HandlerStats a, HandlerStats b)
+            {
+                long pa = a.getLatencies().getValueAtPercentile(99);
+                long pb = b.getLatencies().getValueAtPercentile(99);
+                return (pa < pb) ? 1 : ((pa > pb) ? -1 : 0);
+            }
+        });
+
+        return stats;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Gets the statistics for a single handler.
+     *
+     * @param receiverType the class of the receiver
+     * @param methodName the name of the handler method
+     * @return the statistics for the handler, or null if it has not been
+     *     dispatched to
+     */
+    public HandlerStats getHandlerStats(
+            Class<?> receiverType, String methodName)
+    {
+        Map<String, HandlerStats> methods = handlers.get(receiverType);
+        return (methods != null) ? methods.get(methodName) : null;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Discards all recorded data.
+     */
+    public void reset()
+    {
+        cacheHits.set(0);
+        cacheMisses.set(0);
+        resolutionTimes.reset();
+        handlers.clear();
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Writes a human-readable summary of the metrics to a file, replacing
+     * its contents.
+     *
+     * @param file the file to write
+     * @throws IOException if the file could not be written
+     */
+    public void dump(File file) throws IOException
+    {
+        Writer writer = new FileWriter(file);
+
+        try
+        {
+            dump(writer);
+        }
+        finally
+        {
+            writer.close();
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Writes a human-readable summary of the metrics. Times are reported in
+     * microseconds.
+     *
+     * @param writer the writer to write to
+     */
+    public void dump(Writer writer)
+    {
+        PrintWriter out = new PrintWriter(writer);
+
+        out.println("cache hits: " + getCacheHits()
+                + ", misses: " + getCacheMisses());
+        out.println("resolution: " + resolutionTimes);
+        out.println("shared cache: " + EventDispatcher.getSharedCache());
+
+        for (HandlerStats stats : getHandlerStats())
+        {
+            out.println(stats);
+        }
+
+        out.flush();
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Records the latency of a handler invocation. Dispatchers record their
+     * own; this is for callers that call a resolved {@link MethodInvoker}
+     * directly.
+     *
+     * @param receiverType the class of the handler's receiver
+     * @param methodName the name of the handler
+     * @param nanos how long the handler took to run, in nanoseconds
+     */
+    public void recordInvocation(
+            Class<?> receiverType, String methodName, long nanos)
+    {
+        statsFor(receiverType, methodName).latencies.record(nanos);
+    }
+
+
+    //~ Package-private methods ...............................................
+
+    // ----------------------------------------------------------
+    void recordCacheHit()
+    {
+        cacheHits.incrementAndGet();
+    }
+
+
+    // ----------------------------------------------------------
+    void recordCacheMiss(
+            Class<?> receiverType, String methodName, long nanos)
+    {
+        cacheMisses.incrementAndGet();
+        resolutionTimes.record(nanos);
+        statsFor(receiverType, methodName).resolutionTimes.record(nanos);
+    }
+
+
+
+
+    //~ Public static methods .................................................
+
+    // ----------------------------------------------------------
+    /**
+     * Records that a repeating timer's handler took longer to run than the
+     * timer's period. Does nothing if metrics are disabled.
+     *
+     * @param receiverType the class of the timer's receiver
+     * @param methodName the name of the timer's method
+     */
+    public static void recordTimerOverrun(
+            Class<?> receiverType, String methodName)
+    {
+        DispatchMetrics metrics = current;
+
+        if (metrics != null)
+        {
+            metrics.statsFor(receiverType, methodName)
+                .overruns.incrementAndGet();
+        }
+    }
+
+
+    //~ Private methods .......................................................
+
+    // ----------------------------------------------------------
+    private HandlerStats statsFor(Class<?> receiverType, String methodName)
+    {
+        ConcurrentHashMap<String, HandlerStats> methods =
+                handlers.get(receiverType);
+
+        if (methods == null)
+        {
+            methods = new ConcurrentHashMap<String, HandlerStats>();
+
+            ConcurrentHashMap<String, HandlerStats> existing =
+                    handlers.putIfAbsent(receiverType, methods);
+            if (existing != null)
+            {
+                methods = existing;
+            }
+        }
+
+        HandlerStats stats = methods.get(methodName);
+
+        if (stats == null)
+        {
+            stats = new HandlerStats(receiverType, methodName);
+
+            HandlerStats existing = methods.putIfAbsent(methodName, stats);
+            if (existing != null)
+            {
+                stats = existing;
+            }
+        }
+
+        return stats;
+    }
+
+
+    //~ Inner classes .........................................................
+
+    // ----------------------------------------------------------
+    /**
+     * The statistics recorded for a single handler method on a single
+     * receiver class.
+     */
+    public static class HandlerStats
+    {
+        private final Class<?> receiverType;
+        private final String methodName;
+        private final Histogram latencies = new Histogram();
+        private final Histogram resolutionTimes = new Histogram();
+        private final AtomicLong overruns = new AtomicLong();
+
+
+        // ----------------------------------------------------------
+        private HandlerStats(Class<?> receiverType, String methodName)
+        {
+            this.receiverType = receiverType;
+            this.methodName = methodName;
+        }
+
+
+        // ----------------------------------------------------------
+        /**
+         * Gets the class of the receiver.
+         *
+         * @return the class of the receiver
+         */
+        public Class<?> getReceiverType()
+        {
+            return receiverType;
+        }
+
+
+        // ----------------------------------------------------------
+        /**
+         * Gets the name of the handler method.
+         *
+         * @return the name of the handler method
+         */
+        public String getMethodName()
+        {
+            return methodName;
+        }
+
+
+        // ----------------------------------------------------------
+        /**
+         * Gets the histogram of invocation latencies, in nanoseconds.
+         *
+         * @return the invocation latency histogram
+         */
+        public Histogram getLatencies()
+        {
+            return latencies;
+        }
+
+
+        // ----------------------------------------------------------
+        /**
+         * Gets the histogram of resolution times, in nanoseconds.
+         *
+         * @return the resolution time histogram
+         */
+        public Histogram getResolutionTimes()
+        {
+            return resolutionTimes;
+        }
+
+
+        // ----------------------------------------------------------
+        /**
+         * Gets the number of times a repeating timer calling this handler
+         * overran its period.
+         *
+         * @return the number of timer overruns
+         */
+        public long getTimerOverruns()
+        {
+            return overruns.get();
+        }
+
+
+        // ----------------------------------------------------------
+        @Override
+        public String toString()
+        {
+            String result = receiverType.getName() + "." + methodName
+                    + ": " + latencies;
+
+            if (overruns.get() > 0)
+            {
+                result += ", timer overruns=" + overruns.get();
+            }
+
+            return result;
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * A thread-safe histogram of non-negative long values with log-linear
+     * buckets: each power of two is split into {@value #SUB_BUCKETS} equal
+     * sub-buckets, so any recorded value is reported within about 12% of its
+     * true value.
+     */
+    public static class Histogram
+    {
+        private static final int SUB_BUCKET_BITS = 3;
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+        private final AtomicLongArray counts =
+                new AtomicLongArray(64 * SUB_BUCKETS);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong total = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+
+
+        // ----------------------------------------------------------
+        /**
+         * Records a value.
+         *
+         * @param value the value to record; negative values are recorded
+         *     as zero
+         */
+        public void record(long value)
+        {
+            if (value < 0)
+            {
+                value = 0;
+            }
+
+            counts.incrementAndGet(bucketFor(value));
+            count.incrementAndGet();
+            total.addAndGet(value);
+
+            long oldMax = max.get();
+            while (value > oldMax && !max.compareAndSet(oldMax, value))
+            {
+                oldMax = max.get();
+            }
+        }
+
+
+        // ----------------------------------------------------------
+        /**
+         * Gets the number of recorded values.
+         *
+         * @return the number of recorded values
+         */
+        public long getCount()
+        {
+            return count.get();
+        }
+
+
+        // ----------------------------------------------------------
+        /**
+         * Gets the largest recorded value.
+         *
+         * @return the largest recorded value, or 0 if there are none
+         */
+        public long getMax()
+        {
+            return max.get();
+        }
+
+
+        // ----------------------------------------------------------
+        /**
+         * Gets the mean of the recorded values.
+         *
+         * @return the mean, or 0 if there are no recorded values
+         */
+        public double getMean()
+        {
+            long n = count.get();
+            return (n == 0) ? 0 : (double) total.get() / n;
+        }
+
+
+        // ----------------------------------------------------------
+        /**
+         * Gets the value below which the specified percentage of recorded
+         * values fall. The result is the upper bound of the bucket that
+         * contains the percentile, capped at the maximum recorded value.
+         *
+         * @param percentile the percentile, from 0 to 100
+         * @return the value at the percentile, or 0 if there are no
+         *     recorded values
+         */
+        public long getValueAtPercentile(double percentile)
+        {
+            long n = count.get();
+
+            if (n == 0)
+            {
+                return 0;
+            }
+
+            long target = Math.max(1, (long) Math.ceil(n * percentile / 100));
+            long seen = 0;
+
+            for (int i = 0; i < counts.length(); i++)
+            {
+                seen += counts.get(i);
+
+                if (seen >= target)
+                {
+                    return Math.min(upperBoundOf(i), max.get());
+                }
+            }
+
+            return max.get();
+        }
+
+
+        // ----------------------------------------------------------
+        /**
+         * Discards all recorded values.
+         */
+        public void reset()
+        {
+            for (int i = 0; i < counts.length(); i++)
+            {
+                counts.set(i, 0);
+            }
+
+            count.set(0);
+            total.set(0);
+            max.set(0);
+        }
+
+
+        // ----------------------------------------------------------
+        /**
+         * Summarizes the histogram, interpreting values as nanoseconds and
+         * reporting them in microseconds.
+         */
+        @Override
+        public String toString()
+        {
+            return "count=" + getCount()
+                    + " mean=" + (long) (getMean() / 1000) + "us"
+                    + " p50=" + getValueAtPercentile(50) / 1000 + "us"
+                    + " p90=" + getValueAtPercentile(90) / 1000 + "us"
+                    + " p99=" + getValueAtPercentile(99) / 1000 + "us"
+                    + " max=" + getMax() / 1000 + "us";
+        }
+
+
+        // ----------------------------------------------------------
+        private static int bucketFor(long value)
+        {
+            if (value < SUB_BUCKETS)
+            {
+                return (int) value;
+            }
+
+            int magnitude = 63 - Long.numberOfLeadingZeros(value);
+            int sub = (int) (value >>> (magnitude - SUB_BUCKET_BITS))
+                    & (SUB_BUCKETS - 1);
+
+            return (magnitude - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+        }
+
+
+        // ----------------------------------------------------------
+        private static long upperBoundOf(int bucket)
+        {
+            if (bucket < SUB_BUCKETS)
+            {
+                return bucket;
+            }
+
+            int magnitude = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+            long sub = bucket % SUB_BUCKETS;
+            long width = 1L << (magnitude - SUB_BUCKET_BITS);
+
+            return ((SUB_BUCKETS + sub) << (magnitude - SUB_BUCKET_BITS))
+                    + width - 1;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2011 Virginia Tech Department of Computer Science
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package sofia.internal.events;
+
+import java.lang.reflect.Method;
+
+import sofia.internal.WeakCache;
+
+//-------------------------------------------------------------------------
+/**
+ * <p>
+ * A table of compiled, non-reflective invokers for the event handlers that a
+ * class declares. Tables are generated at build time by the optional Sofia
+ * annotation processor, as a class named after the receiver's binary name
+ * with {@link #SUFFIX} appended (for example, {@code MyScreen$$DispatchTable}
+ * for {@code MyScreen}).
+ * </p><p>
+ * {@link MethodInvoker#forMethod(Method)} asks the table for the method's
+ * declaring class for an invoker before falling back to reflection, so a
+ * handler that has a generated invoker is called directly on every event.
+ * Handler resolution itself is unchanged; classes without a generated table
+ * simply use the reflective invoker.
+ * </p>
+ */
+public abstract class DispatchTable
+{
+    //~ Fields ................................................................
+
+    /**
+     * The suffix appended to a class's binary name to form the name of its
+     * generated dispatch table.
+     */
+    public static final String SUFFIX = "$$DispatchTable";
+
+    // Placeholder stored for classes that have no generated table, since the
+    // cache reports a missing entry as null.
+    private static final DispatchTable NO_TABLE = new DispatchTable() {
+        @Override
+        protected MethodInvoker createInvoker(Method method)
+        {
+            return null;
+        }
+    };
+
+    private static final WeakCache<Class<?>, DispatchTable> tables =
+            new WeakCache<Class<?>, DispatchTable>(256);
+
+
+    //~ Public methods ........................................................
+
+    // ----------------------------------------------------------
+    /**
+     * Gets the generated dispatch table for the specified class, if one
+     * exists.
+     *
+     * @param type the class whose table should be found
+     * @return the dispatch table, or null if none was generated for the class
+     */
+    public static DispatchTable forClass(Class<?> type)
+    {
+        DispatchTable table = tables.get(type);
+
+        if (table == null)
+        {
+            table = loadTable(type);
+            tables.putIfAbsent(type, table);
+        }
+
+        return (table != NO_TABLE) ? table : null;
+    }
+
+
+    //~ Protected methods .....................................................
+
+    // ----------------------------------------------------------
+    /**
+     * Creates a direct invoker for the specified method. Generated tables
+     * implement this by matching the method's {@link #signatureOf(Method)
+     * signature} against the handlers they know about.
+     *
+     * @param method a method declared by the class this table belongs to
+     * @return a new invoker for the method, or null if the table does not
+     *     have one (in which case reflection will be used)
+     */
+    protected abstract MethodInvoker createInvoker(Method method);
+
+
+    // ----------------------------------------------------------
+    /**
+     * Gets the signature string that generated tables use to identify a
+     * method: its name followed by the canonical names of its parameter
+     * types in parentheses, separated by commas with no spaces; for example,
+     * {@code "onTouchMove(float[],float[],long[],int)"}.
+     *
+     * @param method the method
+     * @return the signature string for the method
+     */
+    protected static String signatureOf(Method method)
+    {
+        StringBuilder builder = new StringBuilder(method.getName());
+        builder.append('(');
+
+        Class<?>[] types = method.getParameterTypes();
+        for (int i = 0; i < types.length; i++)
+        {
+            if (i > 0)
+            {
+                builder.append(',');
+            }
+
+            String name = types[i].getCanonicalName();
+            builder.append(name != null ? name : types[i].getName());
+        }
+
+        builder.append(')');
+        return builder.toString();
+    }
+
+
+    //~ Private methods .......................................................
+
+    // ----------------------------------------------------------
+    private static DispatchTable loadTable(Class<?> type)
+    {
+        try
+        {
+            Class<?> tableClass = Class.forName(
+                    type.getName() + SUFFIX, true, type.getClassLoader());
+
+            return (DispatchTable) tableClass.newInstance();
+        }
+        catch (ClassNotFoundException e)
+        {
+            // The processor was not used for this class.
+        }
+        catch (Exception e)
+        {
+            // A table that cannot be instantiated is treated as missing, so
+            // that dispatch still works reflectively.
+        }
+
+        return NO_TABLE;
+    }
+}
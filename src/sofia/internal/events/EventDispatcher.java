@@ -16,18 +16,23 @@
 
 package sofia.internal.events;
 
-import java.lang.reflect.InvocationTargetException;
+import sofia.internal.ClassIndex;
+import sofia.internal.WeakCache;
+
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 //-------------------------------------------------------------------------
 /**
- * Represents a reflective dispatcher with an internal cache of looked-up
- * Method objects.
+ * Represents a reflective dispatcher with a cache of looked-up Method
+ * objects. The cache is shared by all dispatchers in the process, so creating
+ * a new dispatcher for each event does not force the handler to be resolved
+ * again.
  *
  * @author Tony Allevato, Stephen Edwards
  */
@@ -38,9 +43,56 @@ public class EventDispatcher
     // The name of the method that this dispatcher calls.
     private String methodName;
 
-    // A cache of matching method transformers for a particular class.
-    private HashMap<CacheKey,
-        List<MethodTransformer>> transformerCache;
+    // A small inline cache of the most recent resolutions made by this
+    // dispatcher, checked before the shared cache so that repeated events
+    // with the same receiver and argument classes allocate nothing. The array
+    // is replaced (never modified) when a new entry is added.
+    private volatile InlineCacheEntry[] inlineCache = NO_INLINE_ENTRIES;
+
+    // The maximum number of receiver classes in the shared cache.
+    private static final int MAX_CACHED_RECEIVER_TYPES = 256;
+
+    // The maximum number of receiver classes for which a single transformer
+    // keeps an invoker.
+    private static final int MAX_INVOKERS_PER_TRANSFORMER = 64;
+
+    // The maximum number of argument classes in the conversion cost table.
+    private static final int MAX_CACHED_ARGUMENT_TYPES = 512;
+
+    // The maximum number of parameter classes for which the cost of each
+    // argument class is kept.
+    private static final int MAX_CACHED_PARAMETER_TYPES = 64;
+
+    // A process-wide cache of matching method transformers, shared by every
+    // dispatcher so that a given resolution is only performed once. It is
+    // bounded, so that it does not grow without limit as new receiver types
+    // appear. The resolutions refer to the receiver class's methods, so a
+    // cached class stays loaded until its entry is evicted.
+    private static final WeakCache<Class<?>,
+        ConcurrentHashMap<CacheKey, List<MethodTransformer>>>
+            transformerCache = new WeakCache<Class<?>,
+                ConcurrentHashMap<CacheKey, List<MethodTransformer>>>(
+                        MAX_CACHED_RECEIVER_TYPES);
+
+    // Memoized argument conversion costs, keyed weakly by the actual argument
+    // class and then weakly by the formal parameter class, so that scoring
+    // the overloads of a handler is a pair of table lookups per argument and
+    // neither class is kept loaded by the table.
+    private static final WeakCache<Class<?>,
+        WeakCache<Class<?>, Integer>> conversionCosts =
+            new WeakCache<Class<?>, WeakCache<Class<?>, Integer>>(
+                    MAX_CACHED_ARGUMENT_TYPES);
+
+    // The cost returned for an argument that cannot be passed to a parameter.
+    private static final int INCOMPATIBLE = -1;
+
+    // The number of receiver/argument shapes kept in each inline cache.
+    private static final int INLINE_CACHE_SIZE = 4;
+
+    private static final InlineCacheEntry[] NO_INLINE_ENTRIES =
+            new InlineCacheEntry[0];
+
+    private static final Object[] NO_ARGS = {};
 
     private static final Map<Class<?>, Class<?>> wrapperEquivalent =
             new HashMap<Class<?>, Class<?>>();
@@ -75,13 +127,52 @@ public class EventDispatcher
     public EventDispatcher(String method)
     {
         methodName = method;
-        transformerCache =
-                new HashMap<CacheKey, List<MethodTransformer>>();
     }
 
 
     //~ Public methods ........................................................
 
+    // ----------------------------------------------------------
+    /**
+     * Gets the name of the method that this dispatcher calls.
+     *
+     * @return the name of the method that this dispatcher calls
+     */
+    public String getMethodName()
+    {
+        return methodName;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Discards every handler resolution and memoized argument conversion
+     * cost in the process-wide caches, so that the next dispatch to each
+     * receiver class resolves its handlers again.
+     * Dispatchers that already exist keep their own inline caches; create
+     * new dispatchers to measure fully cold dispatch, or to release the
+     * memory held by resolutions for classes that are no longer used.
+     */
+    public static void clearCaches()
+    {
+        transformerCache.clear();
+        conversionCosts.clear();
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Gets the process-wide cache of handler resolutions, keyed by receiver
+     * class, so that its size and effectiveness can be monitored.
+     *
+     * @return the shared resolution cache
+     */
+    public static WeakCache<?, ?> getSharedCache()
+    {
+        return transformerCache;
+    }
+
+
     // ----------------------------------------------------------
     /**
      * Gets a value indicating whether a receiver has a method that satisfies
@@ -101,6 +192,101 @@ public class EventDispatcher
     }
 
 
+    // ----------------------------------------------------------
+    /**
+     * <p>
+     * Resolves, ahead of time, the handlers that a dispatch to the specified
+     * receiver would call, so that the first real dispatch does not pay for
+     * reflective method lookup. This can be called on any thread.
+     * </p><p>
+     * If every argument type is known, the complete resolution is cached
+     * exactly as if the event had been dispatched with arguments of those
+     * classes. A null element means that the type of that argument is not
+     * known in advance (for example, the item in a list that has no adapter
+     * yet); in that case, the receiver's methods with this dispatcher's name
+     * are indexed and their invokers created, which is most of the cost of
+     * resolution, and the final match is made on the first dispatch.
+     * </p>
+     *
+     * @param receiver the receiver of future method calls
+     * @param argTypes the classes of the arguments that future dispatches
+     *     will pass, or null for any that are not known
+     */
+    public void preResolve(Object receiver, Class<?>... argTypes)
+    {
+        if (Arrays.asList(argTypes).contains(null))
+        {
+            for (Method method : ClassIndex.forClass(
+                    receiver.getClass()).getMethodsNamed(methodName))
+            {
+                MethodInvoker.forMethod(method);
+            }
+        }
+        else
+        {
+            CacheKey key = new CacheKey(getResolutionKind(), methodName,
+                    new ArrayList<Class<?>>(Arrays.asList(argTypes)));
+
+            resolve(receiver, key, DispatchMetrics.getCurrent());
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * <p>
+     * Resolves this dispatcher's handler on the receiver for arguments of
+     * the specified classes, as {@link #dispatch(Object, Object...)} would,
+     * and gets its invoker. The resolution goes through the same caches as
+     * a dispatch (so one made by {@link #preResolve(Object, Class...)} is
+     * reused), and is recorded in the {@link DispatchMetrics} if they are
+     * enabled. Callers that deliver many events of the same shape to the
+     * same receiver can resolve the invoker once and call it directly,
+     * skipping the dispatcher on every event.
+     * </p><p>
+     * If more than one handler was resolved, this gets the first one's
+     * invoker. No argument transformations that a subclass performs are
+     * applied; the invoker's method shows which arguments it takes, and for
+     * an {@link OptionalEventDispatcher} these are the leading ones, which
+     * the invoker's entry points that accept leading primitives (such as
+     * {@link MethodInvoker#invokeIntBoolean(Object, Object, int, boolean)})
+     * pass on their own.
+     * </p>
+     *
+     * @param receiver the receiver of future method calls
+     * @param argTypes the classes of the arguments, with null for an
+     *     argument that will be null
+     * @return the invoker for the handler, or null if the receiver has no
+     *     matching method
+     */
+    public MethodInvoker resolveInvoker(Object receiver, Class<?>... argTypes)
+    {
+        CacheKey key = new CacheKey(getResolutionKind(), methodName,
+                new ArrayList<Class<?>>(Arrays.asList(argTypes)));
+        List<MethodTransformer> transformers =
+                resolve(receiver, key, DispatchMetrics.getCurrent());
+
+        return transformers.isEmpty()
+                ? null : transformers.get(0).getInvoker(receiver);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Dispatches the event, with no arguments, to the specified receiver.
+     * This is equivalent to {@code dispatch(receiver, new Object[0])} but
+     * avoids allocating an empty argument array on each call.
+     *
+     * @param receiver the receiver of the method call
+     * @return true if the event should not be dispatched further (because one
+     *      of the handlers returned true), false if dispatch should continue
+     */
+    public boolean dispatch(Object receiver)
+    {
+        return dispatch(receiver, NO_ARGS);
+    }
+
+
     // ----------------------------------------------------------
     /**
      * Dispatches the event to the specified receiver, walking up the
@@ -118,9 +304,21 @@ public class EventDispatcher
 
         if (!transformers.isEmpty())
         {
-            for (MethodTransformer transformer : transformers)
+            DispatchMetrics metrics = DispatchMetrics.getCurrent();
+
+            // Indexed iteration, so that no iterator is allocated per event.
+            for (int i = 0; i < transformers.size(); i++)
             {
-                Object result = invokeTransformer(transformer, receiver, args);
+                long start = (metrics != null) ? System.nanoTime() : 0;
+
+                Object result = invokeTransformer(
+                        transformers.get(i), receiver, args);
+
+                if (metrics != null)
+                {
+                    metrics.recordInvocation(receiver.getClass(), methodName,
+                            System.nanoTime() - start);
+                }
 
                 if (Boolean.TRUE.equals(result))
                 {
@@ -151,6 +349,24 @@ public class EventDispatcher
     }
 
 
+    // ----------------------------------------------------------
+    /**
+     * Gets an object that identifies how this dispatcher resolves methods,
+     * beyond the method name itself. Dispatchers that share the same kind
+     * and method name also share cached resolutions, so subclasses whose
+     * {@link #lookupTransformers(Object, List)} logic depends on additional
+     * state must override this to include that state. The default is the
+     * dispatcher's class.
+     *
+     * @return an object whose {@code equals} and {@code hashCode} identify
+     *     the resolution behavior of this dispatcher
+     */
+    protected Object getResolutionKind()
+    {
+        return getClass();
+    }
+
+
     // ----------------------------------------------------------
     /**
      * TODO document
@@ -170,7 +386,8 @@ public class EventDispatcher
         {
             MethodTransformer identity = new MethodTransformer(
                     Arrays.asList(method.getParameterTypes()));
-            identity.methodCache.put(receiver.getClass(), method);
+            identity.invokerCache.put(
+                    receiver.getClass(), MethodInvoker.forMethod(method));
             transformers.add(identity);
         }
 
@@ -179,52 +396,69 @@ public class EventDispatcher
 
 
     // ------------------------------------------------------
+    /**
+     * Finds the method with this dispatcher's name on the receiver that
+     * best matches the specified argument types. Resolutions are recorded in
+     * the {@link ResolutionStore}, so that later launches of the same build
+     * can skip the search.
+     *
+     * @param receiver the receiver of the method call
+     * @param argTypes the classes of the arguments
+     * @return the best matching method, or null if there is none
+     */
     protected Method lookupMethod(Object receiver, List<Class<?>> argTypes)
+    {
+        ResolutionStore store = ResolutionStore.getInstance();
+        Class<?> receiverType = receiver.getClass();
+        Method method = store.find(receiverType, methodName, argTypes);
+
+        if (method == null)
+        {
+            method = findBestMethod(receiverType, argTypes);
+            store.record(receiverType, methodName, argTypes, method);
+        }
+        else if (method == ResolutionStore.NO_MATCH)
+        {
+            method = null;
+        }
+
+        return method;
+    }
+
+
+    // ------------------------------------------------------
+    private Method findBestMethod(
+            Class<?> receiverType, List<Class<?>> argTypes)
     {
         //System.out.println("Looking for "
         //		+ receiver.getClass().getCanonicalName() + "."
         //		+ methodName + "(" + argTypes.toString() + ")...");
 
-        Class<?> clazz = receiver.getClass();
         Method bestMatch = null;
         int[] bestScore = new int[argTypes.size()];
         int[] nextScore = new int[argTypes.size()];
 
-        while (clazz != null)
+        // Candidates are ordered from the most derived class upward, so an
+        // override wins a tie against the method it overrides.
+        for (Method candidate : ClassIndex.forClass(
+                receiverType).getMethodsNamed(methodName))
         {
-            for (Method candidate : clazz.getDeclaredMethods())
+            //System.out.println("   checking "
+            //    + candidate.toGenericString());
+
+            // Check this method and leave results in nextScore. If it isn't
+            // compatible with the given arguments, ignore it.
+            if (scoreMethod(candidate, argTypes, nextScore)
+                && (bestMatch == null || isBetter(bestScore, nextScore)))
             {
-                if (methodName.equals(candidate.getName()))
-                {
-                    try
-                    {
-                        //System.out.println("   checking "
-                        //    + candidate.toGenericString());
-
-                        // Check this method and leave results in nextScore
-                        scoreMethod(candidate, argTypes, nextScore);
-
-                        if (bestMatch == null
-                            || isBetter(bestScore, nextScore))
-                        {
-                            bestMatch = candidate;
-
-                            // Rotate nextScore into the bestScore position
-                            // then reuse the old bestScore array next iter.
-                            int[] tmp = bestScore;
-                            bestScore = nextScore;
-                            nextScore = tmp;
-                        }
-                    }
-                    catch (IllegalArgumentException e)
-                    {
-                        // This method isn't compatible with the
-                        // given arguments, so ignore it.
-                    }
-                }
-            }
+                bestMatch = candidate;
 
-            clazz = clazz.getSuperclass();
+                // Rotate nextScore into the bestScore position
+                // then reuse the old bestScore array next iter.
+                int[] tmp = bestScore;
+                bestScore = nextScore;
+                nextScore = tmp;
+            }
         }
 
         if (bestMatch != null)
@@ -237,7 +471,7 @@ public class EventDispatcher
 
 
     // ----------------------------------------------------------
-    private List<Class<?>> classesForObjects(Object... objects)
+    private static List<Class<?>> classesForObjects(Object... objects)
     {
         List<Class<?>> types = new ArrayList<Class<?>>(objects.length);
 
@@ -261,42 +495,197 @@ public class EventDispatcher
     private List<MethodTransformer> getMethodTransformers(Object receiver,
             Object... args)
     {
-        List<MethodTransformer> transformers = null;
-        CacheKey key = new CacheKey(receiver, args);
+        Class<?> receiverType = receiver.getClass();
+        InlineCacheEntry[] entries = inlineCache;
+        DispatchMetrics metrics = DispatchMetrics.getCurrent();
 
-        if (!transformerCache.containsKey(key))
+        for (int i = 0; i < entries.length; i++)
         {
-            transformers = lookupTransformers(
-                    receiver, key.getParameterTypes());
-            transformerCache.put(key, transformers);
+            if (entries[i].matches(receiverType, args))
+            {
+                if (metrics != null)
+                {
+                    metrics.recordCacheHit();
+                }
+
+                return entries[i].transformers;
+            }
+        }
+
+        CacheKey key = new CacheKey(getResolutionKind(), methodName,
+                classesForObjects(args));
+
+        return resolve(receiver, key, metrics);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Gets the transformers for a cache key from the shared cache, resolving
+     * them if necessary, and adds them to the inline cache.
+     *
+     * @param receiver the receiver of the method call
+     * @param key the cache key for the receiver and argument types
+     * @param metrics the metrics to record to, or null
+     * @return the transformers for the key
+     */
+    private List<MethodTransformer> resolve(
+            Object receiver, CacheKey key, DispatchMetrics metrics)
+    {
+        Class<?> receiverType = receiver.getClass();
+        ConcurrentHashMap<CacheKey, List<MethodTransformer>> resolutions =
+                resolutionsFor(receiverType);
+        List<MethodTransformer> transformers = resolutions.get(key);
+
+        if (transformers != null)
+        {
+            if (metrics != null)
+            {
+                metrics.recordCacheHit();
+            }
         }
         else
         {
-            transformers = transformerCache.get(key);
+            long start = (metrics != null) ? System.nanoTime() : 0;
+
+            transformers = lookupTransformers(
+                    receiver, key.getParameterTypes());
+
+            if (metrics != null)
+            {
+                metrics.recordCacheMiss(receiverType, methodName,
+                        System.nanoTime() - start);
+            }
+
+            // If another thread resolved the same key in the meantime, keep
+            // the first result so that every dispatcher sees the same list.
+            List<MethodTransformer> existing =
+                    resolutions.putIfAbsent(key, transformers);
+
+            if (existing != null)
+            {
+                transformers = existing;
+            }
         }
 
+        addInlineCacheEntry(new InlineCacheEntry(
+                receiverType, key.getParameterTypes(), transformers));
+
         return transformers;
     }
 
 
     // ----------------------------------------------------------
-    private int argConversionCost(
+    /**
+     * Gets the shared cache of resolutions for a receiver class, creating it
+     * if necessary.
+     *
+     * @param receiverType the receiver class
+     * @return the resolutions for the class
+     */
+    private static ConcurrentHashMap<CacheKey, List<MethodTransformer>>
+        resolutionsFor(Class<?> receiverType)
+    {
+        ConcurrentHashMap<CacheKey, List<MethodTransformer>> resolutions =
+                transformerCache.get(receiverType);
+
+        if (resolutions == null)
+        {
+            resolutions =
+                    new ConcurrentHashMap<CacheKey, List<MethodTransformer>>();
+
+            ConcurrentHashMap<CacheKey, List<MethodTransformer>> existing =
+                    transformerCache.putIfAbsent(receiverType, resolutions);
+            if (existing != null)
+            {
+                resolutions = existing;
+            }
+        }
+
+        return resolutions;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Puts a new entry at the front of the inline cache, dropping the oldest
+     * entry if the cache is full.
+     *
+     * @param entry the entry to add
+     */
+    private void addInlineCacheEntry(InlineCacheEntry entry)
+    {
+        InlineCacheEntry[] oldEntries = inlineCache;
+        int count = Math.min(oldEntries.length + 1, INLINE_CACHE_SIZE);
+
+        InlineCacheEntry[] newEntries = new InlineCacheEntry[count];
+        newEntries[0] = entry;
+        System.arraycopy(oldEntries, 0, newEntries, 1, count - 1);
+
+        inlineCache = newEntries;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Gets the cost of passing an argument of one class to a parameter of
+     * another, looking it up in the shared table of costs that have already
+     * been computed.
+     *
+     * @param actualParamType the class of the argument, or null if the
+     *     argument is null
+     * @param formalParamType the type of the parameter
+     * @return the cost, or {@link #INCOMPATIBLE} if the argument cannot be
+     *     passed to the parameter
+     */
+    private static int argConversionCost(
         Class<?> actualParamType, Class<?> formalParamType)
-        throws IllegalArgumentException
     {
-        if (actualParamType == null && !formalParamType.isPrimitive())
+        if (actualParamType == null)
         {
             // Assume that a null value can go into anything that isn't a
             // primitive type.
-            return 0;
+            return formalParamType.isPrimitive() ? INCOMPATIBLE : 0;
         }
 
-        if (formalParamType.equals(actualParamType))
+        if (formalParamType == actualParamType)
         {
             // Identical types
             return 0;
         }
 
+        WeakCache<Class<?>, Integer> costs =
+                conversionCosts.get(actualParamType);
+
+        if (costs == null)
+        {
+            costs = new WeakCache<Class<?>, Integer>(
+                    MAX_CACHED_PARAMETER_TYPES);
+
+            WeakCache<Class<?>, Integer> existing =
+                    conversionCosts.putIfAbsent(actualParamType, costs);
+            if (existing != null)
+            {
+                costs = existing;
+            }
+        }
+
+        Integer cost = costs.get(formalParamType);
+
+        if (cost == null)
+        {
+            cost = computeConversionCost(actualParamType, formalParamType);
+            costs.put(formalParamType, cost);
+        }
+
+        return cost;
+    }
+
+
+    // ----------------------------------------------------------
+    private static int computeConversionCost(
+        Class<?> actualParamType, Class<?> formalParamType)
+    {
         if (formalParamType.equals(wrapperEquivalent.get(actualParamType)))
         {
             // Treat auto-boxing/unboxing as free
@@ -341,26 +730,40 @@ public class EventDispatcher
             return distance;
         }
 
-        throw new IllegalArgumentException("incompatible types");
+        return INCOMPATIBLE;
     }
 
 
     // ----------------------------------------------------------
-    private void scoreMethod(
+    /**
+     * Scores how well a method's parameters match the argument types,
+     * leaving the cost of each argument in {@code scores}.
+     *
+     * @return true if the method can accept the arguments, or false if it is
+     *     incompatible with them
+     */
+    private static boolean scoreMethod(
         Method m, List<Class<?>> actualArgTypes, int[] scores)
-        throws IllegalArgumentException
     {
         Class<?>[] formals = m.getParameterTypes();
         if (formals.length != actualArgTypes.size())
         {
-            throw new IllegalArgumentException(
-                "incompatible number of arguments");
+            return false;
         }
 
         for (int i = 0; i < formals.length; i++)
         {
-            scores[i] = argConversionCost(actualArgTypes.get(i), formals[i]);
+            int cost = argConversionCost(actualArgTypes.get(i), formals[i]);
+
+            if (cost == INCOMPATIBLE)
+            {
+                return false;
+            }
+
+            scores[i] = cost;
         }
+
+        return true;
     }
 
 
@@ -409,7 +812,7 @@ public class EventDispatcher
         //~ Fields ............................................................
 
         protected final List<Class<?>> argTypes;
-        protected final Map<Class<?>, Method> methodCache;
+        protected final WeakCache<Class<?>, MethodInvoker> invokerCache;
 
 
         //~ Constructors ......................................................
@@ -425,7 +828,8 @@ public class EventDispatcher
         public MethodTransformer(List<Class<?>> argTypes)
         {
             this.argTypes = argTypes;
-            this.methodCache = new HashMap<Class<?>, Method>();
+            this.invokerCache = new WeakCache<Class<?>, MethodInvoker>(
+                    MAX_INVOKERS_PER_TRANSFORMER);
         }
 
 
@@ -439,7 +843,8 @@ public class EventDispatcher
 
             if (method != null)
             {
-                methodCache.put(receiver.getClass(), method);
+                invokerCache.put(receiver.getClass(),
+                        MethodInvoker.forMethod(method));
                 transformers.add(this);
             }
         }
@@ -481,34 +886,37 @@ public class EventDispatcher
         // ------------------------------------------------------
         public Object invoke(Object receiver, Object... args)
         {
-            try
-            {
-                //System.out.println("Invoking " + method.toGenericString()
-                //    + " with " + Arrays.toString(args));
-                return methodCache.get(receiver.getClass()).invoke(
-                        receiver, transform(args));
-            }
-            catch (InvocationTargetException e)
-            {
-                Throwable cause = e.getCause();
+            //System.out.println("Invoking " + method.toGenericString()
+            //    + " with " + Arrays.toString(args));
+            return getInvoker(receiver).invoke(receiver, transform(args));
+        }
 
-                if (cause instanceof Error)
-                {
-                    throw (Error) cause;
-                }
-                else if (cause instanceof RuntimeException)
-                {
-                    throw (RuntimeException) cause;
-                }
-                else
-                {
-                    throw new RuntimeException(cause);
-                }
-            }
-            catch (IllegalAccessException e)
+
+        // ------------------------------------------------------
+        /**
+         * Gets the invoker for the method that this transformer resolved on
+         * the receiver's class. Subclasses that pass primitive arguments can
+         * override {@link #invoke(Object, Object...)} and call one of the
+         * invoker's primitive entry points directly instead of transforming
+         * the argument list.
+         *
+         * @param receiver the receiving object
+         * @return the invoker for the receiver's class
+         */
+        protected MethodInvoker getInvoker(Object receiver)
+        {
+            MethodInvoker invoker = invokerCache.get(receiver.getClass());
+
+            if (invoker == null)
             {
-                throw new RuntimeException(e);
+                // The invoker was evicted since this transformer was resolved
+                // for the receiver's class, so find it again.
+                Method method = lookupMethod(receiver, argTypes);
+                invoker = MethodInvoker.forMethod(method);
+                invokerCache.put(receiver.getClass(), invoker);
             }
+
+            return invoker;
         }
 
 
@@ -530,25 +938,71 @@ public class EventDispatcher
 
 
     // ----------------------------------------------------------
-    private class CacheKey
+    /**
+     * An immutable inline cache entry that can be matched against a receiver
+     * and its arguments without allocating.
+     */
+    private static class InlineCacheEntry
     {
-        private Class<?> receiverType;
-        private List<Class<?>> argTypes;
+        private final Class<?> receiverType;
+        private final Class<?>[] argTypes;
+        private final List<MethodTransformer> transformers;
 
 
         // ----------------------------------------------------------
-        public CacheKey(Object receiver, Object... args)
+        public InlineCacheEntry(Class<?> receiverType,
+                List<Class<?>> argTypes, List<MethodTransformer> transformers)
         {
-            receiverType = receiver.getClass();
-            argTypes = classesForObjects(args);
+            this.receiverType = receiverType;
+            this.argTypes = argTypes.toArray(new Class<?>[argTypes.size()]);
+            this.transformers = transformers;
         }
 
 
         // ----------------------------------------------------------
-        @SuppressWarnings("unused")
-        public Class<?> getReceiverType()
+        public boolean matches(Class<?> receiverType, Object[] args)
         {
-            return receiverType;
+            if (this.receiverType != receiverType
+                    || argTypes.length != args.length)
+            {
+                return false;
+            }
+
+            for (int i = 0; i < args.length; i++)
+            {
+                Class<?> actual = (args[i] == null) ? null : args[i].getClass();
+
+                if (argTypes[i] != actual)
+                {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Identifies a resolution within the shared cache entry for a receiver
+     * class. The receiver class is not part of the key, since it is already
+     * the key of the entry.
+     */
+    private static class CacheKey
+    {
+        private Object kind;
+        private String methodName;
+        private List<Class<?>> argTypes;
+
+
+        // ----------------------------------------------------------
+        public CacheKey(
+                Object kind, String methodName, List<Class<?>> argTypes)
+        {
+            this.kind = kind;
+            this.methodName = methodName;
+            this.argTypes = argTypes;
         }
 
 
@@ -566,7 +1020,8 @@ public class EventDispatcher
             {
                 CacheKey otherMethod = (CacheKey) other;
 
-                return receiverType.equals(otherMethod.receiverType) &&
+                return methodName.equals(otherMethod.methodName) &&
+                        kind.equals(otherMethod.kind) &&
                         argTypes.equals(otherMethod.argTypes);
             }
             else
@@ -579,7 +1034,7 @@ public class EventDispatcher
         // ----------------------------------------------------------
         public int hashCode()
         {
-            return receiverType.hashCode() ^ (argTypes.hashCode() << 13);
+            return methodName.hashCode() ^ (argTypes.hashCode() << 13);
         }
     }
 }
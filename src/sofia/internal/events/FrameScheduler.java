@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2011 Virginia Tech Department of Computer Science
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package sofia.internal.events;
+
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.view.Choreographer;
+
+//-------------------------------------------------------------------------
+/**
+ * <p>
+ * Runs callbacks on the main thread at the start of the next display frame.
+ * Coalesced event handlers (see {@link sofia.app.Coalesced}) use the default
+ * scheduler to deliver their pending events once per frame.
+ * </p><p>
+ * On Android 4.1 and later the default scheduler uses
+ * {@link Choreographer}, so callbacks are aligned with vsync. On earlier
+ * versions it posts to the main thread's handler on a fixed frame interval.
+ * Another scheduler can be installed with {@link #setDefault(FrameScheduler)},
+ * for example to drive frames manually.
+ * </p>
+ */
+public abstract class FrameScheduler
+{
+    //~ Fields ................................................................
+
+    /**
+     * The frame interval, in milliseconds, used when vsync timing is not
+     * available.
+     */
+    public static final long FRAME_MILLIS = 16;
+
+    private static volatile FrameScheduler defaultScheduler;
+
+
+    //~ Public methods ........................................................
+
+    // ----------------------------------------------------------
+    /**
+     * Gets the scheduler used for coalesced event delivery.
+     *
+     * @return the default scheduler
+     */
+    public static FrameScheduler getDefault()
+    {
+        FrameScheduler scheduler = defaultScheduler;
+
+        if (scheduler == null)
+        {
+            synchronized (FrameScheduler.class)
+            {
+                scheduler = defaultScheduler;
+
+                if (scheduler == null)
+                {
+                    if (Build.VERSION.SDK_INT >= 16)
+                    {
+                        scheduler = new ChoreographerScheduler();
+                    }
+                    else
+                    {
+                        scheduler = new HandlerScheduler();
+                    }
+
+                    defaultScheduler = scheduler;
+                }
+            }
+        }
+
+        return scheduler;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Replaces the scheduler used for coalesced event delivery.
+     *
+     * @param scheduler the new scheduler, or null to restore the platform
+     *     default
+     */
+    public static void setDefault(FrameScheduler scheduler)
+    {
+        defaultScheduler = scheduler;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Requests that a callback be run once on the main thread at the start
+     * of the next frame. This method may be called from any thread.
+     *
+     * @param callback the callback to run
+     */
+    public abstract void postFrameCallback(Runnable callback);
+
+
+    //~ Inner classes .........................................................
+
+    // ----------------------------------------------------------
+    /**
+     * Posts callbacks to the main thread's handler at the next multiple of
+     * {@link FrameScheduler#FRAME_MILLIS}.
+     */
+    private static class HandlerScheduler extends FrameScheduler
+    {
+        private final Handler handler = new Handler(Looper.getMainLooper());
+
+
+        // ----------------------------------------------------------
+        @Override
+        public void postFrameCallback(Runnable callback)
+        {
+            long now = SystemClock.uptimeMillis();
+            handler.postDelayed(callback, FRAME_MILLIS - now % FRAME_MILLIS);
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Posts callbacks to the main thread's {@link Choreographer}. This class
+     * is only loaded on API level 16 and later.
+     */
+    private static class ChoreographerScheduler extends FrameScheduler
+    {
+        private final Handler handler = new Handler(Looper.getMainLooper());
+
+
+        // ----------------------------------------------------------
+        @Override
+        public void postFrameCallback(final Runnable callback)
+        {
+            if (Looper.myLooper() == Looper.getMainLooper())
+            {
+                postToChoreographer(callback);
+            }
+            else
+            {
+                // Each thread has its own Choreographer, so hop to the main
+                // thread first.
+                handler.post(new Runnable() {
+                    public void run()
+                    {
+                        postToChoreographer(callback);
+                    }
+                });
+            }
+        }
+
+
+        // ----------------------------------------------------------
+        private void postToChoreographer(final Runnable callback)
+        {
+            Choreographer.getInstance().postFrameCallback(
+                    new Choreographer.FrameCallback() {
+                public void doFrame(long frameTimeNanos)
+                {
+                    callback.run();
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,539 @@
+/*
+ * Copyright (C) 2011 Virginia Tech Department of Computer Science
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package sofia.internal.events;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import sofia.app.Background;
+import sofia.app.Coalesced;
+
+//-------------------------------------------------------------------------
+/**
+ * <p>
+ * A callable object that invokes a resolved handler method. Event dispatchers
+ * obtain an invoker once, when a handler is first resolved, and then call it
+ * for every event instead of going through {@link Method#invoke} directly.
+ * </p><p>
+ * Invokers are shared: {@link #forMethod(Method)} returns the same invoker
+ * for the same method for as long as anything refers to that invoker, such
+ * as a dispatcher that has resolved the method. If the method's class has a
+ * generated
+ * {@link DispatchTable}, the invoker calls the method directly. Otherwise it
+ * falls back to reflection, but disables the per-call access check up front
+ * and unwraps {@link InvocationTargetException}s so that handlers throw
+ * exactly what they would throw if called directly.
+ * </p><p>
+ * Handlers marked {@link Coalesced} get an invoker that defers the call to
+ * the next display frame, and handlers marked {@link Background} get one
+ * that queues the call on a background thread.
+ * </p>
+ */
+public abstract class MethodInvoker
+{
+    //~ Fields ................................................................
+
+    // The invoker for each method, held weakly so that the table does not
+    // keep handler classes loaded. An invoker in use is never replaced, so a
+    // coalescing or background invoker's pending calls are not split between
+    // two instances; one that nothing refers to has no pending calls, since
+    // those refer to it, and can be created again if it is needed. Only read
+    // when a handler is resolved, so a lock is cheap enough.
+    private static final Map<Method, WeakReference<MethodInvoker>> invokers =
+            new WeakHashMap<Method, WeakReference<MethodInvoker>>();
+
+    // Reusable argument arrays for the primitive entry points, so that the
+    // reflective fallback does not allocate an array per call.
+    private static final ThreadLocal<Object[]> argumentPairs =
+            new ThreadLocal<Object[]>() {
+        @Override
+        protected Object[] initialValue()
+        {
+            return new Object[2];
+        }
+    };
+
+    private static final int MAX_REUSED_LENGTH = 8;
+
+    // Reusable argument arrays for invokeLeading, invokePrepended, and the
+    // entry points that take leading primitives, indexed by length, so that
+    // the reflective fallback does not allocate an array per call.
+    private static final ThreadLocal<Object[][]> leadingArguments =
+            new ThreadLocal<Object[][]>() {
+        @Override
+        protected Object[][] initialValue()
+        {
+            return new Object[MAX_REUSED_LENGTH + 1][];
+        }
+    };
+
+    private final Method method;
+    private final int parameterCount;
+
+
+    //~ Constructors ..........................................................
+
+    // ----------------------------------------------------------
+    /**
+     * Initializes a new invoker for the specified method.
+     *
+     * @param method the method that this invoker calls
+     */
+    protected MethodInvoker(Method method)
+    {
+        this.method = method;
+        this.parameterCount = method.getParameterTypes().length;
+    }
+
+
+    //~ Public methods ........................................................
+
+    // ----------------------------------------------------------
+    /**
+     * Gets the shared invoker for the specified method, creating it if
+     * necessary.
+     *
+     * @param method the method to invoke
+     * @return the invoker for the method
+     */
+    public static MethodInvoker forMethod(Method method)
+    {
+        MethodInvoker invoker = existingInvoker(method);
+
+        if (invoker == null)
+        {
+            DispatchTable table =
+                    DispatchTable.forClass(method.getDeclaringClass());
+
+            if (table != null)
+            {
+                invoker = table.createInvoker(method);
+            }
+
+            if (invoker == null)
+            {
+                invoker = new ReflectiveInvoker(method);
+            }
+
+            Background background = method.getAnnotation(Background.class);
+            if (background != null)
+            {
+                invoker = new BackgroundInvoker(invoker, background);
+            }
+
+            Coalesced coalesced = method.getAnnotation(Coalesced.class);
+            if (coalesced != null)
+            {
+                invoker = new CoalescingInvoker(invoker, coalesced.value());
+            }
+
+            synchronized (invokers)
+            {
+                MethodInvoker existing = existingInvoker(method);
+
+                if (existing != null)
+                {
+                    invoker = existing;
+                }
+                else
+                {
+                    // The key must be the invoker's own method object, which
+                    // lives as long as the invoker does, so a stale entry
+                    // (whose key would be kept by put) is removed first.
+                    invokers.remove(method);
+                    invokers.put(invoker.getMethod(),
+                            new WeakReference<MethodInvoker>(invoker));
+                }
+            }
+        }
+
+        return invoker;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Gets the method that this invoker calls.
+     *
+     * @return the method that this invoker calls
+     */
+    public Method getMethod()
+    {
+        return method;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Invokes the method on the specified receiver. Any exception thrown by
+     * the method itself is rethrown unchanged if it is unchecked, or wrapped
+     * in a {@link RuntimeException} if it is checked.
+     *
+     * @param receiver the object on which to invoke the method
+     * @param args the arguments to pass to the method, which must already
+     *     match its formal parameter list
+     * @return the value returned by the method, or null if it is void
+     */
+    public abstract Object invoke(Object receiver, Object... args);
+
+
+    // ----------------------------------------------------------
+    /**
+     * Invokes the method with only the first {@code count} elements of an
+     * argument array, for handlers that ignore trailing event arguments.
+     * Generated invokers override this to read the leading elements directly;
+     * the default implementation copies them into a reusable per-thread
+     * array of the right length and calls {@link #invoke(Object, Object...)}.
+     *
+     * @param receiver the object on which to invoke the method
+     * @param count the number of leading arguments that the method takes
+     * @param args the full argument array, which may be longer than
+     *     {@code count}
+     * @return the value returned by the method, or null if it is void
+     */
+    public Object invokeLeading(Object receiver, int count, Object... args)
+    {
+        if (count == args.length)
+        {
+            return invoke(receiver, args);
+        }
+        else if (count > MAX_REUSED_LENGTH)
+        {
+            Object[] leading = new Object[count];
+            System.arraycopy(args, 0, leading, 0, count);
+            return invoke(receiver, leading);
+        }
+
+        Object[] leading = leadingBuffer(count);
+        System.arraycopy(args, 0, leading, 0, count);
+
+        return invokeAndClear(receiver, leading);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Invokes the method with one argument followed by the elements of an
+     * argument array, for callers that always pass the same object first,
+     * such as an observable notifying its observers. The arguments are
+     * copied into a reusable per-thread array of the right length, as in
+     * {@link #invokeLeading(Object, int, Object...)}.
+     *
+     * @param receiver the object on which to invoke the method
+     * @param first the first argument
+     * @param rest the remaining arguments
+     * @return the value returned by the method, or null if it is void
+     */
+    public Object invokePrepended(
+            Object receiver, Object first, Object... rest)
+    {
+        int count = rest.length + 1;
+
+        if (count > MAX_REUSED_LENGTH)
+        {
+            Object[] all = new Object[count];
+            all[0] = first;
+            System.arraycopy(rest, 0, all, 1, rest.length);
+            return invoke(receiver, all);
+        }
+
+        Object[] all = leadingBuffer(count);
+        all[0] = first;
+        System.arraycopy(rest, 0, all, 1, rest.length);
+
+        return invokeAndClear(receiver, all);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Invokes a method that takes two {@code float} parameters. Generated
+     * invokers override this to pass the values without boxing; the default
+     * implementation boxes them into a reusable per-thread argument array
+     * and calls {@link #invoke(Object, Object...)}.
+     *
+     * @param receiver the object on which to invoke the method
+     * @param a the first argument
+     * @param b the second argument
+     * @return the value returned by the method, or null if it is void
+     */
+    public Object invokeFloatFloat(Object receiver, float a, float b)
+    {
+        Object[] args = argumentPairs.get();
+        args[0] = a;
+        args[1] = b;
+
+        try
+        {
+            return invoke(receiver, args);
+        }
+        finally
+        {
+            args[0] = null;
+            args[1] = null;
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Invokes a method that takes two {@code int} parameters. Generated
+     * invokers override this to pass the values without boxing; the default
+     * implementation boxes them into a reusable per-thread argument array
+     * and calls {@link #invoke(Object, Object...)}.
+     *
+     * @param receiver the object on which to invoke the method
+     * @param a the first argument
+     * @param b the second argument
+     * @return the value returned by the method, or null if it is void
+     */
+    public Object invokeIntInt(Object receiver, int a, int b)
+    {
+        Object[] args = argumentPairs.get();
+        args[0] = a;
+        args[1] = b;
+
+        try
+        {
+            return invoke(receiver, args);
+        }
+        finally
+        {
+            args[0] = null;
+            args[1] = null;
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Invokes a method whose parameters are a leading part of
+     * {@code (Object, int, boolean)}, such as a handler for a progress
+     * change that takes the view, the new progress, and whether the user
+     * made the change, or only some of those. Generated invokers override
+     * this to pass the values without boxing; the default implementation
+     * boxes the ones the method takes into a reusable per-thread argument
+     * array and calls {@link #invoke(Object, Object...)}.
+     *
+     * @param receiver the object on which to invoke the method
+     * @param first the first argument
+     * @param value the second argument
+     * @param flag the third argument
+     * @return the value returned by the method, or null if it is void
+     */
+    public Object invokeIntBoolean(
+            Object receiver, Object first, int value, boolean flag)
+    {
+        Object[] args = leadingBuffer(parameterCount);
+
+        switch (parameterCount)
+        {
+            case 3:
+                args[2] = flag;
+                // fall through
+            case 2:
+                args[1] = value;
+                // fall through
+            case 1:
+                args[0] = first;
+                // fall through
+            default:
+                break;
+        }
+
+        return invokeAndClear(receiver, args);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Invokes a method whose parameters are a leading part of
+     * {@code (Object, float, boolean)}, such as a handler for a rating
+     * change. Generated invokers override this to pass the values without
+     * boxing; the default implementation boxes the ones the method takes
+     * into a reusable per-thread argument array and calls
+     * {@link #invoke(Object, Object...)}.
+     *
+     * @param receiver the object on which to invoke the method
+     * @param first the first argument
+     * @param value the second argument
+     * @param flag the third argument
+     * @return the value returned by the method, or null if it is void
+     */
+    public Object invokeFloatBoolean(
+            Object receiver, Object first, float value, boolean flag)
+    {
+        Object[] args = leadingBuffer(parameterCount);
+
+        switch (parameterCount)
+        {
+            case 3:
+                args[2] = flag;
+                // fall through
+            case 2:
+                args[1] = value;
+                // fall through
+            case 1:
+                args[0] = first;
+                // fall through
+            default:
+                break;
+        }
+
+        return invokeAndClear(receiver, args);
+    }
+
+
+    //~ Protected methods .....................................................
+
+    // ----------------------------------------------------------
+    /**
+     * Rethrows the cause of an {@link InvocationTargetException} as an
+     * unchecked exception.
+     *
+     * @param e the exception thrown by the reflective call
+     * @return never returns normally; declared so that callers can write
+     *     {@code throw rethrow(e);}
+     */
+    protected static RuntimeException rethrow(InvocationTargetException e)
+    {
+        Throwable cause = e.getCause();
+
+        if (cause instanceof Error)
+        {
+            throw (Error) cause;
+        }
+        else if (cause instanceof RuntimeException)
+        {
+            throw (RuntimeException) cause;
+        }
+        else
+        {
+            throw new RuntimeException(cause);
+        }
+    }
+
+
+    //~ Private methods .......................................................
+
+    // ----------------------------------------------------------
+    /**
+     * Gets the invoker already created for a method, if it is still in use.
+     */
+    private static MethodInvoker existingInvoker(Method method)
+    {
+        synchronized (invokers)
+        {
+            WeakReference<MethodInvoker> reference = invokers.get(method);
+            return (reference != null) ? reference.get() : null;
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Gets the calling thread's reusable argument array of the specified
+     * length, which must be at most {@link #MAX_REUSED_LENGTH}.
+     */
+    private static Object[] leadingBuffer(int count)
+    {
+        Object[][] buffers = leadingArguments.get();
+        Object[] args = buffers[count];
+
+        if (args == null)
+        {
+            args = new Object[count];
+            buffers[count] = args;
+        }
+
+        return args;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Invokes the method with a reusable argument array, and then clears the
+     * array so that it does not keep the arguments alive.
+     */
+    private Object invokeAndClear(Object receiver, Object[] args)
+    {
+        try
+        {
+            return invoke(receiver, args);
+        }
+        finally
+        {
+            // Method.invoke has already unpacked the array, so a reentrant
+            // dispatch on this thread can safely reuse it.
+            for (int i = 0; i < args.length; i++)
+            {
+                args[i] = null;
+            }
+        }
+    }
+
+
+    //~ Inner classes .........................................................
+
+    // ----------------------------------------------------------
+    /**
+     * The fallback invoker, which uses {@link Method#invoke} with access
+     * checks disabled.
+     */
+    private static class ReflectiveInvoker extends MethodInvoker
+    {
+        // ----------------------------------------------------------
+        public ReflectiveInvoker(Method method)
+        {
+            super(method);
+
+            try
+            {
+                // Handlers are frequently public methods on non-public
+                // classes (such as anonymous observers), and skipping the
+                // access check also avoids its cost on every call.
+                method.setAccessible(true);
+            }
+            catch (SecurityException e)
+            {
+                // Fall back to checked access.
+            }
+        }
+
+
+        // ----------------------------------------------------------
+        @Override
+        public Object invoke(Object receiver, Object... args)
+        {
+            try
+            {
+                return getMethod().invoke(receiver, args);
+            }
+            catch (InvocationTargetException e)
+            {
+                throw rethrow(e);
+            }
+            catch (IllegalAccessException e)
+            {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+}
@@ -71,10 +71,12 @@ public class MotionEventDispatcher extends EventDispatcher
             xyTransformer = new MethodTransformer(float.class, float.class)
             {
                 // ----------------------------------------------------------
-                protected Object[] transform(Object... args)
+                @Override
+                public Object invoke(Object receiver, Object... args)
                 {
                     MotionEvent e = (MotionEvent) args[0];
-                    return new Object[] { (float) e.getX(), (float) e.getY() };
+                    return getInvoker(receiver).invokeFloatFloat(
+                            receiver, e.getX(), e.getY());
                 }
             };
         }
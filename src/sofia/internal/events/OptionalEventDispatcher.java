@@ -16,7 +16,7 @@
 
 package sofia.internal.events;
 
-import java.lang.reflect.Array;
+import java.util.ArrayList;
 import java.util.List;
 
 //-------------------------------------------------------------------------
@@ -24,14 +24,18 @@ import java.util.List;
  * An event dispatcher that allows some of the rightmost arguments to be
  * optional. For example, if the event dispatcher is created with a minimum
  * argument count of 1 and it is invoked with the arguments (arg1, arg2, arg3),
- * then it will attempt to dispatch the event using any of the following three
- * signatures:
+ * then it will dispatch the event using the first of the following three
+ * signatures that the receiver has a method for:
  * <ul>
  * <li>arg1, arg2, arg3</li>
  * <li>arg1, arg2</li>
  * <li>arg1</li>
  * </ul>
  * <p>
+ * The choice is made once per receiver class and argument classes, and the
+ * handler is then passed the leading arguments directly, without copying the
+ * argument list.
+ * </p><p>
  * If you require more permutability of the arguments than this simple
  * rightmost exclusion provides, or to combine it with other kinds of
  * transformations, then you should create your own subclass of
@@ -82,6 +86,23 @@ public class OptionalEventDispatcher extends EventDispatcher
     //~ Protected methods .....................................................
 
     // ----------------------------------------------------------
+    /**
+     * Dispatchers with different minimum argument counts resolve different
+     * sets of handlers, so the count is part of the resolution kind.
+     */
+    @Override
+    protected Object getResolutionKind()
+    {
+        return getClass().getName() + "/" + minimumArgCount;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Resolves the single best handler: the one that takes the most leading
+     * arguments, from all of them down to the minimum. Only that handler is
+     * called when the event is dispatched.
+     */
     @Override
     protected List<MethodTransformer> lookupTransformers(
             Object receiver, List<Class<?>> argTypes)
@@ -89,40 +110,46 @@ public class OptionalEventDispatcher extends EventDispatcher
         List<MethodTransformer> descriptors =
                 super.lookupTransformers(receiver, argTypes);
 
-        Class<?>[] argTypeArray = new Class<?>[argTypes.size()];
-        argTypes.toArray(argTypeArray);
-
         // We start at size - 1 because the superclass implementation handles
         // the exact match.
-        for (int i = argTypes.size() - 1; i >= minimumArgCount; i--)
+        for (int i = argTypes.size() - 1;
+                descriptors.isEmpty() && i >= minimumArgCount; i--)
         {
-            final int thisCount = i;
-
-            MethodTransformer transformer =
-                    new MethodTransformer(
-                            firstN(argTypeArray, thisCount, Class.class))
-            {
-                protected Object[] transform(Object... args)
-                {
-                    return firstN(args, thisCount, Object.class);
-                }
-            };
-
-            transformer.addIfSupportedBy(receiver, descriptors);
+            new LeadingArgsTransformer(argTypes, i).addIfSupportedBy(
+                    receiver, descriptors);
         }
 
         return descriptors;
     }
 
 
-    //~ Private methods .......................................................
+    //~ Inner classes .........................................................
 
     // ----------------------------------------------------------
-    @SuppressWarnings("unchecked")
-    private static <T> T[] firstN(T[] array, int n, Class<T> klass)
+    /**
+     * Calls a handler that takes only the first few of the dispatched
+     * arguments, passing them through the invoker without building a
+     * truncated copy of the argument array.
+     */
+    private class LeadingArgsTransformer extends MethodTransformer
     {
-        T[] firstN = (T[]) Array.newInstance(klass, n);
-        System.arraycopy(array, 0, firstN, 0, n);
-        return firstN;
+        private final int count;
+
+
+        // ----------------------------------------------------------
+        public LeadingArgsTransformer(List<Class<?>> argTypes, int count)
+        {
+            super(new ArrayList<Class<?>>(argTypes.subList(0, count)));
+
+            this.count = count;
+        }
+
+
+        // ----------------------------------------------------------
+        @Override
+        public Object invoke(Object receiver, Object... args)
+        {
+            return getInvoker(receiver).invokeLeading(receiver, count, args);
+        }
     }
 }
@@ -0,0 +1,552 @@
+/*
+ * Copyright (C) 2011 Virginia Tech Department of Computer Science
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package sofia.internal.events;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+//-------------------------------------------------------------------------
+/**
+ * <p>
+ * A persistent record of the handler resolutions that
+ * {@link EventDispatcher#lookupMethod(Object, List)} has made, so that a
+ * later launch of the same build can skip the reflective search and scoring
+ * and go straight to the method that was chosen before. Each entry maps a
+ * receiver class, method name, and argument classes to the signature of the
+ * method that matched (or to the fact that none did).
+ * </p><p>
+ * The store is a single process-wide instance. It does nothing until
+ * {@link #open(File, String)} is called with a file and a fingerprint of the
+ * application build; entries saved under a different fingerprint are
+ * discarded, since the handlers they describe may have changed.
+ * {@code ScreenMixin} opens the store when the first screen is created and
+ * saves it whenever a screen is paused. Both are done on a single
+ * background thread that the store keeps for the purpose, so the main
+ * thread never waits for the disk; until the entries are loaded, lookups
+ * find nothing and handlers are resolved as usual.
+ * </p>
+ */
+public class ResolutionStore
+{
+    //~ Fields ................................................................
+
+    private static final String HEADER = "sofia-resolutions 1";
+    private static final String NO_MATCH_VALUE = "-";
+
+    /**
+     * Returned by {@link #find(Class, String, List)} when the store records
+     * that no method matched.
+     */
+    static final Method NO_MATCH;
+
+    private static final ResolutionStore instance = new ResolutionStore();
+
+    private static final Map<String, Class<?>> primitiveTypes =
+            new HashMap<String, Class<?>>();
+
+    private final ConcurrentHashMap<String, String> entries =
+            new ConcurrentHashMap<String, String>();
+
+    private volatile File file;
+    private String fingerprint;
+    private volatile boolean dirty;
+
+    // Whether openInBackground has been called and the store has not been
+    // opened yet. Resolutions made in the meantime are kept, so that those
+    // made by the first screen are saved too.
+    private volatile boolean opening;
+
+    // The thread that loads and saves the store, one task at a time. It is
+    // started when the first task is submitted.
+    private final ExecutorService worker =
+            Executors.newSingleThreadExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable task)
+                {
+                    Thread thread = new Thread(task, "Sofia resolution store");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    static
+    {
+        try
+        {
+            NO_MATCH = Object.class.getMethod("toString");
+        }
+        catch (NoSuchMethodException e)
+        {
+            throw new ExceptionInInitializerError(e);
+        }
+
+        Class<?>[] primitives = { boolean.class, byte.class, char.class,
+                short.class, int.class, long.class, float.class,
+                double.class };
+
+        for (Class<?> primitive : primitives)
+        {
+            primitiveTypes.put(primitive.getName(), primitive);
+        }
+    }
+
+
+    //~ Constructors ..........................................................
+
+    // ----------------------------------------------------------
+    private ResolutionStore()
+    {
+        // Use getInstance().
+    }
+
+
+    //~ Public methods ........................................................
+
+    // ----------------------------------------------------------
+    /**
+     * Gets the process-wide resolution store.
+     *
+     * @return the resolution store
+     */
+    public static ResolutionStore getInstance()
+    {
+        return instance;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Gets a value indicating whether the store has been opened.
+     *
+     * @return true if {@link #open(File, String)} has been called
+     */
+    public boolean isOpen()
+    {
+        return file != null;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Opens the store on its background thread, finding the file and the
+     * fingerprint there too, since doing so may itself read from disk. Does
+     * nothing if the store is already open or being opened. If the location
+     * throws an exception, the store stays closed.
+     *
+     * @param location supplies the file and fingerprint to open the store
+     *     with
+     */
+    public synchronized void openInBackground(final Location location)
+    {
+        if (file != null || opening)
+        {
+            return;
+        }
+
+        opening = true;
+
+        worker.execute(new Runnable() {
+            public void run()
+            {
+                try
+                {
+                    open(location.getFile(), location.getFingerprint());
+                }
+                catch (Exception e)
+                {
+                    // Without a fingerprint the store cannot be trusted, so
+                    // handlers are simply resolved as they are used.
+                    entries.clear();
+                }
+                finally
+                {
+                    opening = false;
+                }
+            }
+        });
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Opens the store, loading the entries in the specified file if it was
+     * saved with the same build fingerprint. Does nothing if the store is
+     * already open. A missing, unreadable, or outdated file is ignored and
+     * will be replaced on the next save.
+     *
+     * @param file the file that holds the store
+     * @param fingerprint a string that changes whenever the application is
+     *     rebuilt or updated
+     */
+    public synchronized void open(File file, String fingerprint)
+    {
+        if (this.file != null)
+        {
+            return;
+        }
+
+        this.file = file;
+        this.fingerprint = fingerprint;
+
+        if (!file.exists())
+        {
+            // Keep any resolutions made while the store was being opened.
+            dirty = !entries.isEmpty();
+            return;
+        }
+
+        BufferedReader reader = null;
+
+        try
+        {
+            reader = new BufferedReader(new InputStreamReader(
+                    new FileInputStream(file), "UTF-8"));
+
+            if (HEADER.equals(reader.readLine())
+                    && fingerprint.equals(reader.readLine()))
+            {
+                String line;
+                while ((line = reader.readLine()) != null)
+                {
+                    int tab = line.indexOf('\t');
+
+                    if (tab > 0)
+                    {
+                        entries.putIfAbsent(line.substring(0, tab),
+                                line.substring(tab + 1));
+                    }
+                }
+            }
+            else
+            {
+                // Resolutions made while the store was being opened are
+                // still good, since they were made by this build.
+                dirty = true;
+            }
+        }
+        catch (IOException e)
+        {
+            dirty = true;
+        }
+        finally
+        {
+            closeQuietly(reader);
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Writes the store to its file, if it is open and has changed since it
+     * was loaded or last saved.
+     *
+     * @throws IOException if the file could not be written
+     */
+    public synchronized void save() throws IOException
+    {
+        if (file == null || !dirty)
+        {
+            return;
+        }
+
+        // Clear the flag first, so that entries added while writing mark
+        // the store dirty again.
+        dirty = false;
+
+        File temp = new File(file.getPath() + ".tmp");
+        BufferedWriter writer = null;
+
+        try
+        {
+            writer = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(temp), "UTF-8"));
+
+            writer.write(HEADER);
+            writer.newLine();
+            writer.write(fingerprint);
+            writer.newLine();
+
+            for (Map.Entry<String, String> entry : entries.entrySet())
+            {
+                writer.write(entry.getKey());
+                writer.write('\t');
+                writer.write(entry.getValue());
+                writer.newLine();
+            }
+
+            writer.close();
+            writer = null;
+
+            if (!temp.renameTo(file))
+            {
+                throw new IOException("Could not replace " + file);
+            }
+        }
+        catch (IOException e)
+        {
+            dirty = true;
+            throw e;
+        }
+        finally
+        {
+            closeQuietly(writer);
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Saves the store on a background thread, if it has changed. Errors are
+     * ignored, since the store is only an optimization.
+     */
+    public void saveInBackground()
+    {
+        if (file != null && dirty)
+        {
+            worker.execute(new Runnable() {
+                public void run()
+                {
+                    try
+                    {
+                        save();
+                    }
+                    catch (IOException e)
+                    {
+                        // Try again on the next save.
+                    }
+                }
+            });
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Discards every entry, both in memory and (on the next save) on disk.
+     */
+    public void clear()
+    {
+        entries.clear();
+        dirty = true;
+    }
+
+
+    //~ Package-private methods ...............................................
+
+    // ----------------------------------------------------------
+    /**
+     * Finds the method previously resolved for a receiver class, method
+     * name, and argument classes.
+     *
+     * @return the method, {@link #NO_MATCH} if no method matched, or null if
+     *     the store has no usable entry
+     */
+    Method find(
+            Class<?> receiverType, String methodName, List<Class<?>> argTypes)
+    {
+        if (file == null)
+        {
+            return null;
+        }
+
+        String value = entries.get(keyFor(receiverType, methodName, argTypes));
+
+        if (value == null)
+        {
+            return null;
+        }
+        else if (NO_MATCH_VALUE.equals(value))
+        {
+            return NO_MATCH;
+        }
+
+        try
+        {
+            // Value format: declaring class, space, parameter types.
+            ClassLoader loader = receiverType.getClassLoader();
+            int space = value.indexOf(' ');
+            Class<?> declaringClass =
+                    Class.forName(value.substring(0, space), false, loader);
+
+            String[] paramNames = value.substring(space + 1).split(",", -1);
+            Class<?>[] paramTypes = (paramNames.length == 1
+                    && paramNames[0].length() == 0)
+                    ? new Class<?>[0] : new Class<?>[paramNames.length];
+
+            for (int i = 0; i < paramTypes.length; i++)
+            {
+                paramTypes[i] = typeForName(paramNames[i], loader);
+            }
+
+            return declaringClass.getDeclaredMethod(methodName, paramTypes);
+        }
+        catch (Exception e)
+        {
+            // The entry no longer describes a real method.
+            entries.remove(keyFor(receiverType, methodName, argTypes));
+            dirty = true;
+            return null;
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Records the method that was resolved for a receiver class, method
+     * name, and argument classes. Does nothing if the store is not open.
+     *
+     * @param method the method that matched, or null if none did
+     */
+    void record(Class<?> receiverType, String methodName,
+            List<Class<?>> argTypes, Method method)
+    {
+        if (file == null && !opening)
+        {
+            return;
+        }
+
+        String value;
+
+        if (method == null)
+        {
+            value = NO_MATCH_VALUE;
+        }
+        else
+        {
+            StringBuilder builder = new StringBuilder(
+                    method.getDeclaringClass().getName());
+            builder.append(' ');
+
+            Class<?>[] paramTypes = method.getParameterTypes();
+            for (int i = 0; i < paramTypes.length; i++)
+            {
+                if (i > 0)
+                {
+                    builder.append(',');
+                }
+
+                builder.append(paramTypes[i].getName());
+            }
+
+            value = builder.toString();
+        }
+
+        String old = entries.put(
+                keyFor(receiverType, methodName, argTypes), value);
+
+        if (!value.equals(old))
+        {
+            dirty = true;
+        }
+    }
+
+
+    //~ Private methods .......................................................
+
+    // ----------------------------------------------------------
+    private static String keyFor(
+            Class<?> receiverType, String methodName, List<Class<?>> argTypes)
+    {
+        StringBuilder builder = new StringBuilder(receiverType.getName());
+        builder.append(' ').append(methodName).append(' ');
+
+        for (int i = 0; i < argTypes.size(); i++)
+        {
+            if (i > 0)
+            {
+                builder.append(',');
+            }
+
+            Class<?> type = argTypes.get(i);
+            builder.append(type != null ? type.getName() : "null");
+        }
+
+        return builder.toString();
+    }
+
+
+    // ----------------------------------------------------------
+    private static Class<?> typeForName(String name, ClassLoader loader)
+        throws ClassNotFoundException
+    {
+        Class<?> type = primitiveTypes.get(name);
+        return (type != null) ? type : Class.forName(name, false, loader);
+    }
+
+
+    // ----------------------------------------------------------
+    private static void closeQuietly(Closeable closeable)
+    {
+        if (closeable != null)
+        {
+            try
+            {
+                closeable.close();
+            }
+            catch (IOException e)
+            {
+                // Nothing more can be done.
+            }
+        }
+    }
+
+
+    //~ Nested classes ........................................................
+
+    // ----------------------------------------------------------
+    /**
+     * Supplies the file and build fingerprint for
+     * {@link ResolutionStore#openInBackground(Location)}. Both methods are
+     * called on the store's background thread.
+     */
+    public interface Location
+    {
+        // ----------------------------------------------------------
+        /**
+         * Gets the file that holds the store.
+         *
+         * @return the file
+         * @throws Exception if the file cannot be determined
+         */
+        File getFile() throws Exception;
+
+
+        // ----------------------------------------------------------
+        /**
+         * Gets a string that changes whenever the application is rebuilt
+         * or updated.
+         *
+         * @return the fingerprint
+         * @throws Exception if the fingerprint cannot be determined
+         */
+        String getFingerprint() throws Exception;
+    }
+}
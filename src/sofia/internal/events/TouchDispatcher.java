@@ -16,6 +16,9 @@
 
 package sofia.internal.events;
 
+import sofia.internal.ClassIndex;
+import sofia.internal.WeakCache;
+
 import android.graphics.Point;
 import android.graphics.PointF;
 import android.view.MotionEvent;
@@ -24,6 +27,21 @@ import java.util.List;
 
 /**
  * Handles and dispatches the touch events.
+ * <p>
+ * Move events may carry several batched samples that arrived since the last
+ * event. A receiver that wants all of them can declare a batch overload of
+ * {@code onTouchMove} or {@code onScreenTouchMove} with the signature
+ * {@code (float[] xs, float[] ys, long[] times, int count)}; it is then
+ * called once per event with every historical sample followed by the
+ * current one, in place of the single-point overload. The arrays are reused
+ * between events, so only the first {@code count} elements are meaningful and
+ * they must not be retained after the handler returns.
+ * </p><p>
+ * Either form of a move handler can be marked {@link sofia.app.Coalesced} to
+ * be called once per frame instead of once per event; a batch handler marked
+ * {@code @Coalesced(Coalesced.Mode.ACCUMULATE)} then receives every sample
+ * from the frame.
+ * </p>
  *
  * @author Brian Bowden
  */
@@ -50,6 +68,47 @@ public class TouchDispatcher
     private static final EventDispatcher onScreenDoubleTap =
         new PointDispatcher("onScreenDoubleTap");
 
+    private static final EventDispatcher onTouchMoveBatch =
+        new EventDispatcher("onTouchMove");
+    private static final EventDispatcher onScreenTouchMoveBatch =
+        new EventDispatcher("onScreenTouchMove");
+
+    // The hooks in the order they are dispatched. A receiver class's hook
+    // mask has bit i set if it declares a method named like hooks[i].
+    private static final EventDispatcher[] hooks = {
+        onTouchDown, onScreenTouchDown,
+        onTouchMove, onScreenTouchMove,
+        onTap, onDoubleTap, onTouchUp,
+        onScreenTap, onScreenDoubleTap, onScreenTouchUp
+    };
+
+    private static final int DOWN_HOOKS = 0x003;
+    private static final int MOVE_HOOKS = 0x00C;
+    private static final int UP_HOOKS   = 0x3F0;
+
+    // The batch overloads of the move hooks, indexed like hooks.
+    private static final EventDispatcher[] batchHooks = {
+        null, null,
+        onTouchMoveBatch, onScreenTouchMoveBatch,
+        null, null, null,
+        null, null, null
+    };
+
+    // The hook mask of each receiver class seen so far, keyed weakly and
+    // bounded like the other class-keyed dispatch caches.
+    private static final WeakCache<Class<?>, Integer> hookMasks =
+        new WeakCache<Class<?>, Integer>(256);
+
+    // Reusable sample buffers for batch dispatch, one set per thread.
+    private static final ThreadLocal<TouchBatch> batches =
+        new ThreadLocal<TouchBatch>() {
+            @Override
+            protected TouchBatch initialValue()
+            {
+                return new TouchBatch();
+            }
+        };
+
     private TouchDispatcher()
     {
         // Nothing to do
@@ -63,48 +122,156 @@ public class TouchDispatcher
      */
     public static void dispatchTo(Object target, MotionEvent e)
     {
-        // FIXME
-        PointF location = null;
-        if (e != null)
+        if (e == null)
         {
-            // may need to fix later
-            location = new PointF(e.getRawX() / 0.5f, e.getRawY() / 0.5f);
+            return;
         }
 
         int action = e.getAction() & MotionEvent.ACTION_MASK;
-        // Press
+        int actionHooks;
+
         if (action == MotionEvent.ACTION_DOWN)
         {
-            onTouchDown.dispatch(target, location);
-            onScreenTouchDown.dispatch(target, location);
+            actionHooks = DOWN_HOOKS;
+        }
+        else if (action == MotionEvent.ACTION_MOVE)
+        {
+            actionHooks = MOVE_HOOKS;
         }
+        else if (action == MotionEvent.ACTION_UP)
+        {
+            // Need to add support for double-tapping; for now onDoubleTap is
+            // dispatched on every tap.
+            actionHooks = UP_HOOKS;
+        }
+        else
+        {
+            return;
+        }
+
+        // Most receivers implement only one or two of the hooks, so skip the
+        // others with a bit test rather than a cache probe each.
+        int supported = hookMaskFor(target.getClass()) & actionHooks;
 
-        // Move
-        if (action == MotionEvent.ACTION_MOVE)
+        if (supported != 0)
         {
-            onTouchMove.dispatch(target, location);
-            onScreenTouchMove.dispatch(target, location);
+            PointF location = null;
+            TouchBatch batch = null;
+
+            for (int i = 0; i < hooks.length; i++)
+            {
+                if ((supported & (1 << i)) == 0)
+                {
+                    continue;
+                }
+
+                if (batchHooks[i] != null)
+                {
+                    if (batch == null)
+                    {
+                        batch = batches.get();
+                        batch.fill(e);
+                    }
+
+                    if (batchHooks[i].isSupportedBy(target, batch.args))
+                    {
+                        batchHooks[i].dispatch(target, batch.args);
+                        continue;
+                    }
+                }
+
+                if (location == null)
+                {
+                    // FIXME may need to fix later
+                    location = new PointF(
+                        e.getRawX() / 0.5f, e.getRawY() / 0.5f);
+                }
+
+                hooks[i].dispatch(target, location);
+            }
         }
+    }
 
-        // Need to add support for double-tapping
-        // Tap
-        if (action == MotionEvent.ACTION_UP)
+    /**
+     * Gets the mask of touch hooks that a receiver class could handle,
+     * computing it the first time the class is seen. A bit is set if the
+     * class declares any method with the hook's name; whether the method's
+     * parameters actually match is left to the hook's dispatcher.
+     *
+     * @param receiverClass the class of the receiver
+     * @return the hook mask for the class
+     */
+    private static int hookMaskFor(Class<?> receiverClass)
+    {
+        Integer mask = hookMasks.get(receiverClass);
+
+        if (mask == null)
         {
-            onTap.dispatch(target, location);
-            //if (e.getClickCount() % 2 == 0)
+            ClassIndex index = ClassIndex.forClass(receiverClass);
+            int bits = 0;
+
+            for (int i = 0; i < hooks.length; i++)
             {
-                onDoubleTap.dispatch(target, location);
+                if (!index.getMethodsNamed(
+                    hooks[i].getMethodName()).isEmpty())
+                {
+                    bits |= 1 << i;
+                }
             }
-            onTouchUp.dispatch(target, location);
+
+            mask = bits;
+            hookMasks.putIfAbsent(receiverClass, mask);
         }
-        if (action == MotionEvent.ACTION_UP)
+
+        return mask;
+    }
+
+    /**
+     * Reusable buffers holding the samples of a single move event, in the
+     * same coordinate space as the single-point hooks, along with the
+     * argument array passed to the batch handlers.
+     */
+    private static class TouchBatch
+    {
+        private float[] xs = new float[8];
+        private float[] ys = new float[8];
+        private long[] times = new long[8];
+        private final Object[] args = new Object[4];
+
+        // ----------------------------------------------------------
+        public void fill(MotionEvent e)
         {
-            onScreenTap.dispatch(target, location);
-            //if (e.getClickCount() % 2 == 0)
+            int history = e.getHistorySize();
+            int count = history + 1;
+
+            if (xs.length < count)
+            {
+                int capacity = Math.max(count, xs.length * 2);
+                xs = new float[capacity];
+                ys = new float[capacity];
+                times = new long[capacity];
+            }
+
+            // Historical samples are only available relative to the view,
+            // so shift them by the current raw offset.
+            float offsetX = e.getRawX() - e.getX();
+            float offsetY = e.getRawY() - e.getY();
+
+            for (int i = 0; i < history; i++)
             {
-                onScreenDoubleTap.dispatch(target, location);
+                xs[i] = (e.getHistoricalX(i) + offsetX) / 0.5f;
+                ys[i] = (e.getHistoricalY(i) + offsetY) / 0.5f;
+                times[i] = e.getHistoricalEventTime(i);
             }
-            onScreenTouchUp.dispatch(target, location);
+
+            xs[history] = e.getRawX() / 0.5f;
+            ys[history] = e.getRawY() / 0.5f;
+            times[history] = e.getEventTime();
+
+            args[0] = xs;
+            args[1] = ys;
+            args[2] = times;
+            args[3] = count;
         }
     }
 
@@ -142,16 +309,19 @@ public class TouchDispatcher
         // ----------------------------------------------------------
         /**
          * Transforms an event with signature (PointF point) to one with
-         * signature (float x, float y).
+         * signature (float x, float y), passing the coordinates through the
+         * invoker's primitive entry point.
          */
         private MethodTransformer xyFloatTransformer =
             new MethodTransformer(float.class, float.class)
         {
             // ----------------------------------------------------------
-            protected Object[] transform(Object... args)
+            @Override
+            public Object invoke(Object receiver, Object... args)
             {
                 PointF p = (PointF) args[0];
-                return new Object[] { p.x, p.y };
+                return getInvoker(receiver).invokeFloatFloat(
+                    receiver, p.x, p.y);
             }
         };
 
@@ -159,16 +329,19 @@ public class TouchDispatcher
         // ----------------------------------------------------------
         /**
          * Transforms an event with signature (PointF point) to one with
-         * signature (int x, int y).
+         * signature (int x, int y), passing the coordinates through the
+         * invoker's primitive entry point.
          */
         private MethodTransformer xyIntTransformer =
             new MethodTransformer(int.class, int.class)
         {
             // ----------------------------------------------------------
-            protected Object[] transform(Object... args)
+            @Override
+            public Object invoke(Object receiver, Object... args)
             {
                 PointF p = (PointF) args[0];
-                return new Object[] { Math.round(p.x), Math.round(p.y) };
+                return getInvoker(receiver).invokeIntInt(
+                    receiver, Math.round(p.x), Math.round(p.y));
             }
         };
 
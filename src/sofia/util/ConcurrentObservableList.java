@@ -0,0 +1,892 @@
+/*
+ * Copyright (C) 2011 Virginia Tech Department of Computer Science
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package sofia.util;
+
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Queue;
+import java.util.RandomAccess;
+
+// -------------------------------------------------------------------------
+/**
+ * <p>
+ * An {@link ObservableList} that can be read on any thread while another
+ * thread changes it. Reading never blocks: every change publishes a new
+ * immutable {@link Snapshot} of the list, and readers such as filters,
+ * adapters, and serializers can take the current one with
+ * {@link #snapshot()} and iterate it for as long as they like, without
+ * copying it and without seeing any change made after it was taken.
+ * </p><p>
+ * Changes are made one at a time. Adding an item at the end of the list
+ * usually costs no more than it does in an {@link java.util.ArrayList}, since
+ * snapshots never look past their own size; inserting, removing, or
+ * replacing an item copies the list once, so that existing snapshots are
+ * not disturbed. To make many changes at once, wrap them in a
+ * {@link #batch(Runnable) batch}, as with any observable list.
+ * </p><p>
+ * Observers are notified after the list is unlocked, so a slow observer
+ * does not hold up other threads' changes. If several threads change the
+ * list at once, each change is still delivered exactly once and in the
+ * order the changes were made, but possibly by one of the other threads,
+ * and possibly after the thread that made it has returned.
+ * </p><p>
+ * The iterators and sublists returned by this list are views of the
+ * snapshot that was current when they were created, and they cannot be used
+ * to change the list. Since another thread may change the list between two
+ * calls, code that reads several items (for example, by calling
+ * {@link #size()} and then {@link #get(int)}) should read them from a single
+ * snapshot.
+ * </p>
+ *
+ * @param <E> the type of element stored in the list
+ */
+public class ConcurrentObservableList<E>
+    extends ObservableList<E>
+{
+    //~ Fields ................................................................
+
+    private final SnapshotArray<E> contents;
+
+    // Changes made while the lock was held, waiting to be delivered once it
+    // is released, and whether a thread is delivering them. Only one thread
+    // delivers at a time, so observers see the changes in the order they
+    // were made.
+    private final Queue<ListChange> queuedChanges =
+            new LinkedList<ListChange>();
+    private boolean deliveringChanges;
+
+
+    //~ Constructors ..........................................................
+
+    // ----------------------------------------------------------
+    /**
+     * Creates a new, empty {@code ConcurrentObservableList}.
+     */
+    public ConcurrentObservableList()
+    {
+        this(new SnapshotArray<E>());
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Creates a new {@code ConcurrentObservableList} that is initialized with
+     * a copy of the data in the specified collection.
+     *
+     * @param collection the collection to be copied into the new list
+     */
+    public ConcurrentObservableList(Collection<? extends E> collection)
+    {
+        this(new SnapshotArray<E>());
+
+        contents.addAll(collection);
+    }
+
+
+    // ----------------------------------------------------------
+    private ConcurrentObservableList(SnapshotArray<E> contents)
+    {
+        super((List<E>) contents);
+
+        this.contents = contents;
+    }
+
+
+    //~ Methods ...............................................................
+
+    // ----------------------------------------------------------
+    /**
+     * Gets an immutable view of the list as it is now. Taking a snapshot
+     * does not copy the list or block other threads, and the snapshot does
+     * not change when the list does.
+     *
+     * @return the current snapshot of the list
+     */
+    public Snapshot<E> snapshot()
+    {
+        return contents.current;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Gets the version of the list, which starts at zero and increases
+     * whenever the list changes. This is the same as
+     * {@code snapshot().getVersion()}.
+     *
+     * @return the version of the list
+     */
+    public long getVersion()
+    {
+        return contents.current.getVersion();
+    }
+
+
+    // ----------------------------------------------------------
+    @Override
+    public void endBatch()
+    {
+        try
+        {
+            super.endBatch();
+        }
+        finally
+        {
+            deliverQueuedChanges();
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    @Override
+    public void setAll(
+            Collection<? extends E> items, KeyExtractor<? super E> keys)
+    {
+        try
+        {
+            synchronized (this)
+            {
+                super.setAll(items, keys);
+            }
+        }
+        finally
+        {
+            deliverQueuedChanges();
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    @Override
+    public void move(int from, int to)
+    {
+        try
+        {
+            synchronized (this)
+            {
+                super.move(from, to);
+            }
+        }
+        finally
+        {
+            deliverQueuedChanges();
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    @Override
+    public void add(int index, E item)
+    {
+        try
+        {
+            synchronized (this)
+            {
+                super.add(index, item);
+            }
+        }
+        finally
+        {
+            deliverQueuedChanges();
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    @Override
+    public boolean add(E item)
+    {
+        try
+        {
+            synchronized (this)
+            {
+                return super.add(item);
+            }
+        }
+        finally
+        {
+            deliverQueuedChanges();
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    @Override
+    public boolean addAll(
+            int index, Collection<? extends E> collection)
+    {
+        try
+        {
+            synchronized (this)
+            {
+                return super.addAll(index, collection);
+            }
+        }
+        finally
+        {
+            deliverQueuedChanges();
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    @Override
+    public boolean addAll(Collection<? extends E> collection)
+    {
+        try
+        {
+            synchronized (this)
+            {
+                return super.addAll(collection);
+            }
+        }
+        finally
+        {
+            deliverQueuedChanges();
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    @Override
+    public void clear()
+    {
+        try
+        {
+            synchronized (this)
+            {
+                super.clear();
+            }
+        }
+        finally
+        {
+            deliverQueuedChanges();
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    @Override
+    public E remove(int index)
+    {
+        try
+        {
+            synchronized (this)
+            {
+                return super.remove(index);
+            }
+        }
+        finally
+        {
+            deliverQueuedChanges();
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    @Override
+    public boolean remove(Object object)
+    {
+        try
+        {
+            synchronized (this)
+            {
+                return super.remove(object);
+            }
+        }
+        finally
+        {
+            deliverQueuedChanges();
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    @Override
+    public boolean removeAll(Collection<?> collection)
+    {
+        try
+        {
+            synchronized (this)
+            {
+                return super.removeAll(collection);
+            }
+        }
+        finally
+        {
+            deliverQueuedChanges();
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    @Override
+    public boolean retainAll(Collection<?> collection)
+    {
+        try
+        {
+            synchronized (this)
+            {
+                return super.retainAll(collection);
+            }
+        }
+        finally
+        {
+            deliverQueuedChanges();
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    @Override
+    public E set(int index, E item)
+    {
+        try
+        {
+            synchronized (this)
+            {
+                return super.set(index, item);
+            }
+        }
+        finally
+        {
+            deliverQueuedChanges();
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Gets an iterator over the current snapshot of the list. The iterator
+     * does not support {@code remove}.
+     *
+     * @return an iterator over the current snapshot
+     */
+    @Override
+    public Iterator<E> iterator()
+    {
+        return snapshot().iterator();
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Gets a list iterator over the current snapshot of the list. The
+     * iterator does not support {@code add}, {@code remove}, or {@code set}.
+     *
+     * @return a list iterator over the current snapshot
+     */
+    @Override
+    public ListIterator<E> listIterator()
+    {
+        return snapshot().listIterator();
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Gets a list iterator over the current snapshot of the list, starting
+     * at the specified index. The iterator does not support {@code add},
+     * {@code remove}, or {@code set}.
+     *
+     * @param index the index of the first item to be returned by
+     *     {@code next}
+     * @return a list iterator over the current snapshot
+     */
+    @Override
+    public ListIterator<E> listIterator(int index)
+    {
+        return snapshot().listIterator(index);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Gets an immutable view of part of the current snapshot of the list.
+     *
+     * @param start the index of the first item in the view
+     * @param end the index after the last item in the view
+     * @return a view of part of the current snapshot
+     */
+    @Override
+    public List<E> subList(int start, int end)
+    {
+        return snapshot().subList(start, end);
+    }
+
+
+    //~ Package-private methods ...............................................
+
+    // ----------------------------------------------------------
+    /**
+     * Queues a change to be delivered once the lock is released, so that
+     * observers never run while the list is locked. Every method that
+     * changes the list delivers the queued changes before it returns.
+     *
+     * @param change the change
+     */
+    @Override
+    void notifyChange(ListChange change)
+    {
+        synchronized (this)
+        {
+            queuedChanges.add(change);
+        }
+    }
+
+
+    //~ Private methods .......................................................
+
+    // ----------------------------------------------------------
+    /**
+     * Delivers the queued changes to the observers, in order, unless another
+     * thread (or an observer further up this thread's stack) is already
+     * delivering them, in which case it delivers these too.
+     */
+    private void deliverQueuedChanges()
+    {
+        synchronized (this)
+        {
+            if (deliveringChanges || queuedChanges.isEmpty())
+            {
+                return;
+            }
+
+            deliveringChanges = true;
+        }
+
+        boolean finished = false;
+
+        try
+        {
+            while (true)
+            {
+                ListChange change;
+
+                synchronized (this)
+                {
+                    change = queuedChanges.poll();
+
+                    if (change == null)
+                    {
+                        deliveringChanges = false;
+                        finished = true;
+                        return;
+                    }
+                }
+
+                super.notifyChange(change);
+            }
+        }
+        finally
+        {
+            // If an observer threw, let the next change deliver the rest.
+            if (!finished)
+            {
+                synchronized (this)
+                {
+                    deliveringChanges = false;
+                }
+            }
+        }
+    }
+
+
+    //~ Nested classes ........................................................
+
+    // ----------------------------------------------------------
+    /**
+     * An immutable view of a {@link ConcurrentObservableList} at one point in
+     * time.
+     *
+     * @param <E> the type of element stored in the list
+     */
+    public static final class Snapshot<E>
+        extends AbstractList<E>
+        implements RandomAccess
+    {
+        //~ Fields ............................................................
+
+        // Only the first size elements belong to this snapshot; the list may
+        // append to the rest of the array after the snapshot is taken.
+        private final Object[] elements;
+        private final int size;
+        private final long version;
+
+
+        //~ Constructors ......................................................
+
+        // ----------------------------------------------------------
+        private Snapshot(Object[] elements, int size, long version)
+        {
+            this.elements = elements;
+            this.size = size;
+            this.version = version;
+        }
+
+
+        //~ Methods ...........................................................
+
+        // ----------------------------------------------------------
+        /**
+         * Gets the version of the list that this snapshot shows. Two
+         * snapshots of the same list with the same version have the same
+         * contents.
+         *
+         * @return the version of the list
+         */
+        public long getVersion()
+        {
+            return version;
+        }
+
+
+        // ----------------------------------------------------------
+        @Override
+        @SuppressWarnings("unchecked")
+        public E get(int index)
+        {
+            if (index < 0 || index >= size)
+            {
+                throw new IndexOutOfBoundsException(
+                        "Index: " + index + ", Size: " + size);
+            }
+
+            return (E) elements[index];
+        }
+
+
+        // ----------------------------------------------------------
+        @Override
+        public int size()
+        {
+            return size;
+        }
+
+
+        // ----------------------------------------------------------
+        @Override
+        public int indexOf(Object object)
+        {
+            for (int i = 0; i < size; i++)
+            {
+                if (object == null ? elements[i] == null
+                        : object.equals(elements[i]))
+                {
+                    return i;
+                }
+            }
+
+            return -1;
+        }
+
+
+        // ----------------------------------------------------------
+        @Override
+        public int lastIndexOf(Object object)
+        {
+            for (int i = size - 1; i >= 0; i--)
+            {
+                if (object == null ? elements[i] == null
+                        : object.equals(elements[i]))
+                {
+                    return i;
+                }
+            }
+
+            return -1;
+        }
+
+
+        // ----------------------------------------------------------
+        @Override
+        public boolean contains(Object object)
+        {
+            return indexOf(object) != -1;
+        }
+
+
+        // ----------------------------------------------------------
+        @Override
+        public Object[] toArray()
+        {
+            Object[] array = new Object[size];
+            System.arraycopy(elements, 0, array, 0, size);
+            return array;
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * The list that backs a {@code ConcurrentObservableList}. Reads go to
+     * the current snapshot without locking; each write publishes a new
+     * snapshot. Appending stores into the spare capacity of the current
+     * array, which no snapshot can see; any other change copies the array.
+     */
+    private static class SnapshotArray<E>
+        extends AbstractList<E>
+        implements RandomAccess
+    {
+        //~ Fields ............................................................
+
+        private static final Object[] NO_ELEMENTS = new Object[0];
+
+        private volatile Snapshot<E> current =
+                new Snapshot<E>(NO_ELEMENTS, 0, 0);
+
+
+        //~ Methods ...........................................................
+
+        // ----------------------------------------------------------
+        @Override
+        public E get(int index)
+        {
+            return current.get(index);
+        }
+
+
+        // ----------------------------------------------------------
+        @Override
+        public int size()
+        {
+            return current.size();
+        }
+
+
+        // ----------------------------------------------------------
+        @Override
+        public int indexOf(Object object)
+        {
+            return current.indexOf(object);
+        }
+
+
+        // ----------------------------------------------------------
+        @Override
+        public int lastIndexOf(Object object)
+        {
+            return current.lastIndexOf(object);
+        }
+
+
+        // ----------------------------------------------------------
+        @Override
+        public boolean contains(Object object)
+        {
+            return current.contains(object);
+        }
+
+
+        // ----------------------------------------------------------
+        @Override
+        public Object[] toArray()
+        {
+            return current.toArray();
+        }
+
+
+        // ----------------------------------------------------------
+        @Override
+        public <T> T[] toArray(T[] array)
+        {
+            return current.toArray(array);
+        }
+
+
+        // ----------------------------------------------------------
+        @Override
+        public synchronized void add(int index, E item)
+        {
+            insert(index, new Object[] { item });
+        }
+
+
+        // ----------------------------------------------------------
+        @Override
+        public synchronized boolean addAll(
+                int index, Collection<? extends E> collection)
+        {
+            return insert(index, collection.toArray());
+        }
+
+
+        // ----------------------------------------------------------
+        @Override
+        public synchronized boolean addAll(Collection<? extends E> collection)
+        {
+            return insert(current.size, collection.toArray());
+        }
+
+
+        // ----------------------------------------------------------
+        @Override
+        public synchronized E set(int index, E item)
+        {
+            Snapshot<E> snapshot = current;
+            E old = snapshot.get(index);
+
+            Object[] elements = snapshot.elements.clone();
+            elements[index] = item;
+            publish(elements, snapshot.size);
+
+            return old;
+        }
+
+
+        // ----------------------------------------------------------
+        @Override
+        public synchronized E remove(int index)
+        {
+            Snapshot<E> snapshot = current;
+            E old = snapshot.get(index);
+
+            Object[] elements = new Object[snapshot.elements.length];
+            System.arraycopy(snapshot.elements, 0, elements, 0, index);
+            System.arraycopy(snapshot.elements, index + 1, elements, index,
+                    snapshot.size - index - 1);
+            publish(elements, snapshot.size - 1);
+
+            return old;
+        }
+
+
+        // ----------------------------------------------------------
+        @Override
+        public synchronized void clear()
+        {
+            publish(NO_ELEMENTS, 0);
+        }
+
+
+        // ----------------------------------------------------------
+        @Override
+        protected synchronized void removeRange(int from, int to)
+        {
+            Snapshot<E> snapshot = current;
+
+            if (from < 0 || from > to || to > snapshot.size)
+            {
+                throw new IndexOutOfBoundsException("From: " + from
+                        + ", To: " + to + ", Size: " + snapshot.size);
+            }
+            else if (from == to)
+            {
+                return;
+            }
+
+            Object[] elements = new Object[snapshot.elements.length];
+            System.arraycopy(snapshot.elements, 0, elements, 0, from);
+            System.arraycopy(snapshot.elements, to, elements, from,
+                    snapshot.size - to);
+            publish(elements, snapshot.size - (to - from));
+        }
+
+
+        // ----------------------------------------------------------
+        @Override
+        public synchronized boolean removeAll(Collection<?> collection)
+        {
+            return retain(collection, false);
+        }
+
+
+        // ----------------------------------------------------------
+        @Override
+        public synchronized boolean retainAll(Collection<?> collection)
+        {
+            return retain(collection, true);
+        }
+
+
+        // ----------------------------------------------------------
+        private boolean insert(int index, Object[] items)
+        {
+            Snapshot<E> snapshot = current;
+            int size = snapshot.size;
+
+            if (index < 0 || index > size)
+            {
+                throw new IndexOutOfBoundsException(
+                        "Index: " + index + ", Size: " + size);
+            }
+            else if (items.length == 0)
+            {
+                return false;
+            }
+
+            Object[] elements = snapshot.elements;
+            int newSize = size + items.length;
+
+            if (index == size && newSize <= elements.length)
+            {
+                // No snapshot can see past its own size, so the spare
+                // capacity can be filled in place.
+                System.arraycopy(items, 0, elements, size, items.length);
+            }
+            else
+            {
+                elements = new Object[Math.max(newSize, size + size / 2 + 1)];
+                System.arraycopy(snapshot.elements, 0, elements, 0, index);
+                System.arraycopy(snapshot.elements, index,
+                        elements, index + items.length, size - index);
+                System.arraycopy(items, 0, elements, index, items.length);
+            }
+
+            publish(elements, newSize);
+            return true;
+        }
+
+
+        // ----------------------------------------------------------
+        private boolean retain(Collection<?> collection, boolean keep)
+        {
+            Snapshot<E> snapshot = current;
+            Object[] elements = new Object[snapshot.elements.length];
+            int newSize = 0;
+
+            for (int i = 0; i < snapshot.size; i++)
+            {
+                Object element = snapshot.elements[i];
+
+                if (collection.contains(element) == keep)
+                {
+                    elements[newSize++] = element;
+                }
+            }
+
+            if (newSize == snapshot.size)
+            {
+                return false;
+            }
+
+            publish(elements, newSize);
+            return true;
+        }
+
+
+        // ----------------------------------------------------------
+        private void publish(Object[] elements, int size)
+        {
+            current = new Snapshot<E>(elements, size, current.version + 1);
+        }
+    }
+}
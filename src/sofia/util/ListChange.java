@@ -0,0 +1,327 @@
+/*
+ * Copyright (C) 2011 Virginia Tech Department of Computer Science
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package sofia.util;
+
+//-------------------------------------------------------------------------
+/**
+ * <p>
+ * Describes a change made to an {@link ObservableList}: a range of items that
+ * was inserted, removed, or replaced, or an item that was moved. An
+ * observable list passes one of these to its observers after every change,
+ * so an observer can update only the part of its display that is affected.
+ * To receive it, give the observer a {@code changeWasObserved} method that
+ * takes the change after the list:
+ * </p>
+ * <pre>
+ * public void changeWasObserved(ObservableList&lt;String&gt; list,
+ *     ListChange change)
+ * {
+ *     if (change.getType() == ListChange.Type.CHANGED)
+ *     {
+ *         redrawRows(change.getStart(), change.getCount());
+ *     }
+ *     else
+ *     {
+ *         redrawEverything();
+ *     }
+ * }</pre>
+ * <p>
+ * Observers that only take the list continue to work as before. When the
+ * list cannot describe a change precisely (for example, after
+ * {@link ObservableList#removeAll(java.util.Collection)}, or after a batch
+ * containing several unrelated changes), the change has the type
+ * {@link Type#RESET}, which means that anything in the list may be
+ * different.
+ * </p>
+ */
+public final class ListChange
+{
+    //~ Fields ................................................................
+
+    private static final ListChange RESET = new ListChange(Type.RESET, 0, 0, 0);
+
+    private final Type type;
+    private final int start;
+    private final int count;
+    private final int to;
+
+
+    //~ Constructors ..........................................................
+
+    // ----------------------------------------------------------
+    private ListChange(Type type, int start, int count, int to)
+    {
+        this.type = type;
+        this.start = start;
+        this.count = count;
+        this.to = to;
+    }
+
+
+    //~ Public methods ........................................................
+
+    // ----------------------------------------------------------
+    /**
+     * Creates a change describing items that were inserted into a list.
+     *
+     * @param start the index of the first inserted item
+     * @param count the number of items inserted
+     * @return the change
+     */
+    public static ListChange inserted(int start, int count)
+    {
+        return new ListChange(Type.INSERTED, start, count, 0);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Creates a change describing items that were removed from a list.
+     *
+     * @param start the index that the first removed item had
+     * @param count the number of items removed
+     * @return the change
+     */
+    public static ListChange removed(int start, int count)
+    {
+        return new ListChange(Type.REMOVED, start, count, 0);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Creates a change describing items that were replaced in a list.
+     *
+     * @param start the index of the first replaced item
+     * @param count the number of items replaced
+     * @return the change
+     */
+    public static ListChange changed(int start, int count)
+    {
+        return new ListChange(Type.CHANGED, start, count, 0);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Creates a change describing an item that was moved within a list.
+     *
+     * @param from the index the item had before it was moved
+     * @param to the index the item has after it was moved
+     * @return the change
+     */
+    public static ListChange moved(int from, int to)
+    {
+        return new ListChange(Type.MOVED, from, 1, to);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Gets a change indicating that anything in a list may have changed.
+     *
+     * @return the change
+     */
+    public static ListChange reset()
+    {
+        return RESET;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Gets the kind of change.
+     *
+     * @return the kind of change
+     */
+    public Type getType()
+    {
+        return type;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Gets the index of the first item affected by the change. For a move,
+     * this is the index the item had before it was moved. For a reset, this
+     * is zero.
+     *
+     * @return the index of the first affected item
+     */
+    public int getStart()
+    {
+        return start;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Gets the number of items affected by the change. For a move, this is
+     * one. For a reset, this is zero.
+     *
+     * @return the number of affected items
+     */
+    public int getCount()
+    {
+        return count;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Gets the index that a moved item has after the move.
+     *
+     * @return the index the item was moved to, or zero if this change is not
+     *     a move
+     */
+    public int getTo()
+    {
+        return to;
+    }
+
+
+    // ----------------------------------------------------------
+    @Override
+    public boolean equals(Object other)
+    {
+        if (other instanceof ListChange)
+        {
+            ListChange otherChange = (ListChange) other;
+
+            return type == otherChange.type
+                    && start == otherChange.start
+                    && count == otherChange.count
+                    && to == otherChange.to;
+        }
+        else
+        {
+            return false;
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    @Override
+    public int hashCode()
+    {
+        return ((type.hashCode() * 31 + start) * 31 + count) * 31 + to;
+    }
+
+
+    // ----------------------------------------------------------
+    @Override
+    public String toString()
+    {
+        switch (type)
+        {
+            case MOVED:
+                return "moved(" + start + " -> " + to + ")";
+
+            case RESET:
+                return "reset";
+
+            default:
+                return type.name().toLowerCase()
+                        + "(" + start + ", " + count + ")";
+        }
+    }
+
+
+    //~ Package-private methods ...............................................
+
+    // ----------------------------------------------------------
+    /**
+     * Combines this change with one that was made after it, for a batch of
+     * changes. Consecutive insertions, removals, or replacements of adjacent
+     * ranges combine into a single range; anything else combines into a
+     * reset.
+     *
+     * @param next the change that was made after this one
+     * @return a change that describes both changes
+     */
+    ListChange followedBy(ListChange next)
+    {
+        if (type != next.type)
+        {
+            return RESET;
+        }
+
+        switch (type)
+        {
+            case INSERTED:
+                // The new items went inside or at either end of the old ones.
+                if (next.start >= start && next.start <= start + count)
+                {
+                    return inserted(start, count + next.count);
+                }
+                break;
+
+            case REMOVED:
+                // Removing forward from the same index, or backward from it.
+                if (next.start == start)
+                {
+                    return removed(start, count + next.count);
+                }
+                else if (next.start + next.count == start)
+                {
+                    return removed(next.start, count + next.count);
+                }
+                break;
+
+            case CHANGED:
+                if (next.start <= start + count
+                        && start <= next.start + next.count)
+                {
+                    int newStart = Math.min(start, next.start);
+                    int newEnd = Math.max(
+                            start + count, next.start + next.count);
+                    return changed(newStart, newEnd - newStart);
+                }
+                break;
+
+            default:
+                break;
+        }
+
+        return RESET;
+    }
+
+
+    //~ Nested classes ........................................................
+
+    // ----------------------------------------------------------
+    /**
+     * The kinds of changes that can be made to a list.
+     */
+    public static enum Type
+    {
+        /** A range of items was inserted. */
+        INSERTED,
+
+        /** A range of items was removed. */
+        REMOVED,
+
+        /** A range of items was replaced with other items. */
+        CHANGED,
+
+        /** A single item was moved to a different index. */
+        MOVED,
+
+        /** Anything in the list may have changed. */
+        RESET
+    }
+}
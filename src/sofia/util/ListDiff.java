@@ -0,0 +1,291 @@
+/*
+ * Copyright (C) 2011 Virginia Tech Department of Computer Science
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package sofia.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+//-------------------------------------------------------------------------
+/**
+ * <p>
+ * The shortest edit script that turns one sequence of keys into another,
+ * found with Myers' O((N+M)D) difference algorithm. The script is a list of
+ * operations in order: keep the next old key (which equals the next new
+ * key), delete the next old key, or insert the next new key. It is used by
+ * {@link ObservableList#setAll(java.util.Collection)}.
+ * </p><p>
+ * The algorithm keeps the furthest point reached on each diagonal for every
+ * edit distance it tries, so its memory grows with the square of the number
+ * of differences. {@link #compute(Object[], Object[], int)} gives up and
+ * returns null once that would exceed a limit, since a list that has changed
+ * that much is cheaper to replace outright.
+ * </p>
+ */
+class ListDiff
+{
+    //~ Fields ................................................................
+
+    /** Keeps the next old key, which equals the next new key. */
+    static final int KEEP = 0;
+
+    /** Deletes the next old key. */
+    static final int DELETE = 1;
+
+    /** Inserts the next new key. */
+    static final int INSERT = 2;
+
+    private final int[] operations;
+    private final int[] oldIndices;
+    private final int[] newIndices;
+
+
+    //~ Constructors ..........................................................
+
+    // ----------------------------------------------------------
+    private ListDiff(int[] operations, int[] oldIndices, int[] newIndices)
+    {
+        this.operations = operations;
+        this.oldIndices = oldIndices;
+        this.newIndices = newIndices;
+    }
+
+
+    //~ Methods ...............................................................
+
+    // ----------------------------------------------------------
+    /**
+     * Computes the shortest edit script between two sequences of keys. Keys
+     * are compared with {@code equals}, and may be null.
+     *
+     * @param oldKeys the keys of the old sequence
+     * @param newKeys the keys of the new sequence
+     * @param maxTraceSize the largest number of diagonal positions that may
+     *     be kept while searching
+     * @return the edit script, or null if finding it would keep more than
+     *     {@code maxTraceSize} positions
+     */
+    static ListDiff compute(
+            Object[] oldKeys, Object[] newKeys, int maxTraceSize)
+    {
+        int n = oldKeys.length;
+        int m = newKeys.length;
+        int max = n + m;
+        int offset = max + 1;
+
+        // v[offset + k] is the furthest x reached on diagonal k = x - y.
+        int[] v = new int[2 * max + 3];
+        List<int[]> trace = new ArrayList<int[]>();
+        int traceSize = 0;
+
+        for (int d = 0; d <= max; d++)
+        {
+            // Keep diagonals -(d + 1) to d + 1 as they were before this
+            // round, which is all that backtracking through it reads.
+            traceSize += 2 * d + 3;
+            if (traceSize > maxTraceSize)
+            {
+                return null;
+            }
+
+            int[] saved = new int[2 * d + 3];
+            System.arraycopy(v, offset - d - 1, saved, 0, saved.length);
+            trace.add(saved);
+
+            for (int k = -d; k <= d; k += 2)
+            {
+                int x;
+
+                if (k == -d || (k != d
+                        && v[offset + k - 1] < v[offset + k + 1]))
+                {
+                    x = v[offset + k + 1];
+                }
+                else
+                {
+                    x = v[offset + k - 1] + 1;
+                }
+
+                int y = x - k;
+
+                while (x < n && y < m && equal(oldKeys[x], newKeys[y]))
+                {
+                    x++;
+                    y++;
+                }
+
+                v[offset + k] = x;
+
+                if (x >= n && y >= m)
+                {
+                    return backtrack(trace, n, m);
+                }
+            }
+        }
+
+        // Not reached: d = n + m always reaches the end.
+        return null;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Gets the number of operations in the script.
+     *
+     * @return the number of operations
+     */
+    int size()
+    {
+        return operations.length;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Gets the kind of an operation.
+     *
+     * @param index the index of the operation
+     * @return {@link #KEEP}, {@link #DELETE}, or {@link #INSERT}
+     */
+    int getOperation(int index)
+    {
+        return operations[index];
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Gets the index in the old sequence of the key that an operation keeps
+     * or deletes.
+     *
+     * @param index the index of the operation
+     * @return the index of the old key, or -1 for an insertion
+     */
+    int getOldIndex(int index)
+    {
+        return oldIndices[index];
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Gets the index in the new sequence of the key that an operation keeps
+     * or inserts.
+     *
+     * @param index the index of the operation
+     * @return the index of the new key, or -1 for a deletion
+     */
+    int getNewIndex(int index)
+    {
+        return newIndices[index];
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Compares two keys, either of which may be null.
+     *
+     * @param a the first key
+     * @param b the second key
+     * @return true if the keys are equal
+     */
+    static boolean equal(Object a, Object b)
+    {
+        return (a == null) ? b == null : a.equals(b);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Walks back from the end of both sequences through the saved rounds to
+     * recover the operations, then puts them in forward order.
+     */
+    private static ListDiff backtrack(List<int[]> trace, int n, int m)
+    {
+        int count = n + m;
+        int[] operations = new int[count];
+        int[] oldIndices = new int[count];
+        int[] newIndices = new int[count];
+        int size = 0;
+
+        int x = n;
+        int y = m;
+
+        for (int d = trace.size() - 1; d >= 0; d--)
+        {
+            int[] v = trace.get(d);
+            int k = x - y;
+            int previousK;
+
+            // Saved diagonals start at -(d + 1).
+            if (k == -d || (k != d && v[k - 1 + d + 1] < v[k + 1 + d + 1]))
+            {
+                previousK = k + 1;
+            }
+            else
+            {
+                previousK = k - 1;
+            }
+
+            int previousX = v[previousK + d + 1];
+            int previousY = previousX - previousK;
+
+            while (x > previousX && y > previousY)
+            {
+                x--;
+                y--;
+                operations[size] = KEEP;
+                oldIndices[size] = x;
+                newIndices[size] = y;
+                size++;
+            }
+
+            if (d > 0)
+            {
+                if (x == previousX)
+                {
+                    y--;
+                    operations[size] = INSERT;
+                    oldIndices[size] = -1;
+                    newIndices[size] = y;
+                }
+                else
+                {
+                    x--;
+                    operations[size] = DELETE;
+                    oldIndices[size] = x;
+                    newIndices[size] = -1;
+                }
+
+                size++;
+            }
+        }
+
+        // Reverse into forward order, trimming the unused space.
+        int[] forwardOperations = new int[size];
+        int[] forwardOld = new int[size];
+        int[] forwardNew = new int[size];
+
+        for (int i = 0; i < size; i++)
+        {
+            forwardOperations[i] = operations[size - 1 - i];
+            forwardOld[i] = oldIndices[size - 1 - i];
+            forwardNew[i] = newIndices[size - 1 - i];
+        }
+
+        return new ListDiff(forwardOperations, forwardOld, forwardNew);
+    }
+}
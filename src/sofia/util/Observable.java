@@ -17,9 +17,13 @@
 package sofia.util;
 
 import sofia.internal.events.EventDispatcher;
+import sofia.internal.events.MethodInvoker;
 
-import java.util.LinkedHashSet;
-import java.util.Set;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+
+import android.os.Handler;
+import android.os.Looper;
 
 //--------------------------------------------------------------------------
 /**
@@ -45,6 +49,18 @@ import java.util.Set;
  * </p>
  * <pre>
  * observable.addObserver(x, "methodToCall");</pre>
+ * <p>
+ * An observable object keeps its observers alive. If an observer should not
+ * outlive the rest of the objects that use it (for example, a widget that
+ * observes a model shared by several screens), add it with
+ * {@link #addWeakObserver(Object)} instead; it is removed automatically once
+ * nothing else refers to it.
+ * </p><p>
+ * Observers are normally called on whichever thread made the change. If the
+ * observers update the user interface, call
+ * {@link #setNotifyingOnMainThread(boolean)} so that changes made on
+ * background threads are delivered on the main thread instead.
+ * </p>
  *
  * @author Tony Allevato
  */
@@ -56,8 +72,19 @@ public abstract class Observable
     // object.
     private static final String DEFAULT_METHOD_NAME = "changeWasObserved";
 
-    // The set of observers for this object.
-    private transient LinkedHashSet<Observer> observers;
+    private static final Observer[] NO_OBSERVERS = new Observer[0];
+
+    private static final Object[] NO_ARGUMENTS = new Object[0];
+
+    // The observers for this object, in the order they were added. The array
+    // is never modified; adding or removing an observer replaces it, so that
+    // notifying observers can iterate it without locking or copying.
+    private transient volatile Observer[] observers;
+
+    // Whether notifications are delivered on the main thread, and the
+    // combined notification waiting to be delivered there, if any.
+    private volatile boolean notifyingOnMainThread;
+    private Object[] pendingArguments;
 
 
     //~ Constructors ..........................................................
@@ -68,7 +95,7 @@ public abstract class Observable
      */
     public Observable()
     {
-        observers = new LinkedHashSet<Observer>();
+        observers = NO_OBSERVERS;
     }
 
 
@@ -118,7 +145,46 @@ public abstract class Observable
      */
     public synchronized void addObserver(Object observer, String method)
     {
-        observers.add(new Observer(observer, method));
+        addObserver(new Observer(observer, method, false));
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * <p>
+     * Adds the specified object {@code observer} to the set of observers for
+     * this object, like {@link #addObserver(Object)}, but without keeping the
+     * observer alive. Once the observer is no longer referenced anywhere
+     * else and has been garbage collected, it is removed from the set of
+     * observers.
+     * </p><p>
+     * Since the observable does not keep it alive, the observer must be
+     * referenced by something that lives as long as it should be notified.
+     * An anonymous observer that is only passed to this method may be
+     * collected at any time.
+     * </p>
+     *
+     * @param observer the object that will observe changes to this object
+     */
+    public synchronized void addWeakObserver(Object observer)
+    {
+        addWeakObserver(observer, DEFAULT_METHOD_NAME);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Adds the specified object {@code observer} to the set of observers for
+     * this object, using the specified method name, but without keeping the
+     * observer alive. See {@link #addWeakObserver(Object)} and
+     * {@link #addObserver(Object, String)} for details.
+     *
+     * @param observer the object that will observe changes to this object
+     * @param method the name of the method that will be called on the observer
+     */
+    public synchronized void addWeakObserver(Object observer, String method)
+    {
+        addObserver(new Observer(observer, method, true));
     }
 
 
@@ -152,7 +218,7 @@ public abstract class Observable
      */
     public synchronized void removeObserver(Object observer, String method)
     {
-        removeObserver(new Observer(observer, method));
+        removeObserver(new Observer(observer, method, false));
     }
 
 
@@ -162,7 +228,7 @@ public abstract class Observable
      */
     public synchronized void clearObservers()
     {
-        observers.clear();
+        observers = NO_OBSERVERS;
     }
 
 
@@ -192,28 +258,228 @@ public abstract class Observable
      *     public void changeWasObserved(MyModel model, String str, int x, double y)</pre>
      * <p>
      * If no such method exists, then an attempt is made to call one that takes
-     * only the observable object as a parameter.
+     * only the observable object as a parameter. The method is chosen once
+     * for each observer and set of argument classes, and then called directly
+     * on later notifications with arguments of the same classes.
      * </p>
      * <pre>
      *     public void changeWasObserved(MyModel model)</pre>
      * <p>
      * The order that the observers are called is undefined. User code should
      * not be written that depends on some observers being called before or
-     * after others.
+     * after others. Observers added or removed while the observers are being
+     * notified do not affect the notification in progress.
+     * </p><p>
+     * If {@link #setNotifyingOnMainThread(boolean)} has been turned on and
+     * this is called on a different thread, the observers are notified later,
+     * on the main thread, and this method returns immediately.
      * </p>
      */
-    @SuppressWarnings("unchecked")
     public void notifyObservers(Object... arguments)
     {
-        Set<Observer> clonedObservers;
+        if (notifyingOnMainThread)
+        {
+            notifyOnMainThread(arguments);
+        }
+        else
+        {
+            deliver(arguments);
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * <p>
+     * Sets whether the observers of this object are always notified on the
+     * main (user interface) thread. This is off by default, and observers are
+     * notified on the thread that calls {@link #notifyObservers(Object...)}.
+     * </p><p>
+     * When it is on, a notification made on the main thread is delivered
+     * right away, as usual. A notification made on any other thread is queued
+     * instead, so a background thread can keep making changes without
+     * waiting for the user interface. All of the notifications queued before
+     * the main thread gets to them are combined, using
+     * {@link #combineNotifications(Object[], Object[])}, and delivered as
+     * one.
+     * </p><p>
+     * Only the notification moves to the main thread, not the change. An
+     * observer that reads this object when notified may find that it has
+     * changed again since, and an Android adapter must not see its data
+     * change before it is notified. So a list shown through an adapter
+     * should either be changed only on the main thread, or be a
+     * {@link ConcurrentObservableList} whose snapshot the adapter takes when
+     * it is notified, as Sofia's list views, spinners, and auto-complete
+     * text views do when they are given one.
+     * </p>
+     *
+     * @param value true to notify observers on the main thread, or false to
+     *     notify them on the thread that made the change
+     */
+    public void setNotifyingOnMainThread(boolean value)
+    {
+        notifyingOnMainThread = value;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Gets whether the observers of this object are always notified on the
+     * main thread. See {@link #setNotifyingOnMainThread(boolean)}.
+     *
+     * @return true if observers are notified on the main thread
+     */
+    public boolean isNotifyingOnMainThread()
+    {
+        return notifyingOnMainThread;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Combines two notifications that are waiting to be delivered on the
+     * main thread into one. Subclasses whose notification arguments describe
+     * individual changes should override this to describe both changes. The
+     * default implementation keeps the later arguments, which is correct
+     * when the arguments describe the current state of the object.
+     *
+     * @param earlier the arguments of the earlier notification
+     * @param later the arguments of the later notification
+     * @return the arguments of a single notification that stands for both
+     */
+    protected Object[] combineNotifications(Object[] earlier, Object[] later)
+    {
+        return later;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Notifies every observer, on the current thread.
+     *
+     * @param arguments the arguments to pass to the observers
+     */
+    private void deliver(Object[] arguments)
+    {
+        Observer[] currentObservers = observers;
+
+        for (int i = 0; i < currentObservers.length; i++)
+        {
+            currentObservers[i].observe(this, arguments);
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Delivers a notification now if this is the main thread, together with
+     * any that are queued; otherwise, adds it to the queued notification and
+     * makes sure that the main thread will deliver it.
+     *
+     * @param arguments the arguments to pass to the observers
+     */
+    private void notifyOnMainThread(Object[] arguments)
+    {
+        boolean onMainThread = Looper.myLooper() == Looper.getMainLooper();
+        Object[] toDeliver = null;
+
+        synchronized (this)
+        {
+            if (pendingArguments != null)
+            {
+                arguments = combineNotifications(pendingArguments, arguments);
+            }
+
+            if (onMainThread)
+            {
+                pendingArguments = null;
+                toDeliver = arguments;
+            }
+            else
+            {
+                // A delivery is already posted if anything was pending.
+                boolean post = pendingArguments == null;
+                pendingArguments = arguments;
+
+                if (post)
+                {
+                    MainThread.handler.post(new Runnable() {
+                        public void run()
+                        {
+                            deliverPending();
+                        }
+                    });
+                }
+            }
+        }
+
+        if (toDeliver != null)
+        {
+            deliver(toDeliver);
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Delivers the queued notification, if it has not already been delivered
+     * along with a later one made on the main thread.
+     */
+    private void deliverPending()
+    {
+        Object[] arguments;
+
         synchronized (this)
         {
-            clonedObservers = (Set<Observer>) observers.clone();
+            arguments = pendingArguments;
+            pendingArguments = null;
         }
 
-        for (Observer observer : clonedObservers)
+        if (arguments != null)
         {
-            observer.observe(this, arguments);
+            deliver(arguments);
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Adds the internal observer to the set of observers, unless an observer
+     * with the same receiver and method is already there.
+     *
+     * @param newObserver the internal observer
+     */
+    private synchronized void addObserver(Observer newObserver)
+    {
+        Observer[] oldObservers = observers;
+
+        if (indexOf(oldObservers, newObserver) == -1)
+        {
+            newObserver.bind(this);
+
+            // Drop any weak observers that have been collected while the
+            // array is being copied anyway.
+            Observer[] newObservers = new Observer[oldObservers.length + 1];
+            int count = 0;
+
+            for (Observer observer : oldObservers)
+            {
+                if (observer.getReceiver() != null)
+                {
+                    newObservers[count++] = observer;
+                }
+            }
+
+            newObservers[count++] = newObserver;
+
+            if (count < newObservers.length)
+            {
+                Observer[] trimmed = new Observer[count];
+                System.arraycopy(newObservers, 0, trimmed, 0, count);
+                newObservers = trimmed;
+            }
+
+            observers = newObservers;
         }
     }
 
@@ -226,33 +492,110 @@ public abstract class Observable
      */
     private synchronized void removeObserver(Observer observer)
     {
-        observers.remove(observer);
+        Observer[] oldObservers = observers;
+        int index = indexOf(oldObservers, observer);
+
+        if (index != -1)
+        {
+            if (oldObservers.length == 1)
+            {
+                observers = NO_OBSERVERS;
+            }
+            else
+            {
+                Observer[] newObservers =
+                        new Observer[oldObservers.length - 1];
+                System.arraycopy(oldObservers, 0, newObservers, 0, index);
+                System.arraycopy(oldObservers, index + 1, newObservers,
+                        index, newObservers.length - index);
+                observers = newObservers;
+            }
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Finds an observer in an array of observers.
+     *
+     * @param array the array to search
+     * @param observer the observer to find
+     * @return the index of the observer, or -1 if it is not in the array
+     */
+    private static int indexOf(Observer[] array, Observer observer)
+    {
+        for (int i = 0; i < array.length; i++)
+        {
+            if (array[i] == observer || array[i].equals(observer))
+            {
+                return i;
+            }
+        }
+
+        return -1;
     }
 
 
     //~ Inner classes .........................................................
 
+    // ----------------------------------------------------------
+    /**
+     * Holds the handler for the main thread, so that it is only created once
+     * an observable actually needs it.
+     */
+    private static class MainThread
+    {
+        public static final Handler handler =
+                new Handler(Looper.getMainLooper());
+    }
+
+
     // ----------------------------------------------------------
     /**
      * Encapsulates the information needed to represent an observer -- the
-     * receiving object, the method to call on it, and a method dispatcher to
-     * perform the dynamic call.
+     * receiving object (held either strongly or weakly), the method to call
+     * on it, and the invokers for the overloads of that method that have
+     * been resolved for it.
      */
     private static class Observer
     {
         //~ Fields ............................................................
 
+        // The number of argument shapes whose bindings are kept; notifying
+        // with more shapes than this resolves the oldest one again.
+        private static final int MAX_BINDINGS = 8;
+
+        private static final Binding[] NO_BINDINGS = new Binding[0];
+
         private Object receiver;
+        private WeakReference<Object> weakReceiver;
+        private int receiverHash;
         private String method;
         private EventDispatcher event;
 
+        // The invoker for the overload that takes only the observable, which
+        // is resolved when the observer is added, and the bindings for the
+        // classes of arguments that notifications have passed, oldest first.
+        // The array is replaced rather than modified, like the observers.
+        private MethodInvoker plainInvoker;
+        private volatile Binding[] bindings = NO_BINDINGS;
+
 
         //~ Constructors ......................................................
 
         // ----------------------------------------------------------
-        public Observer(Object receiver, String method)
+        public Observer(Object receiver, String method, boolean weak)
         {
-            this.receiver = receiver;
+            if (weak)
+            {
+                this.weakReceiver = new WeakReference<Object>(receiver);
+            }
+            else
+            {
+                this.receiver = receiver;
+            }
+
+            this.receiverHash = System.identityHashCode(receiver);
             this.method = method;
             event = new EventDispatcher(method);
         }
@@ -261,20 +604,153 @@ public abstract class Observable
         //~ Methods ...........................................................
 
         // ----------------------------------------------------------
-        public void observe(Object object, Object... arguments)
+        /**
+         * Gets the receiving object.
+         *
+         * @return the receiving object, or null if it was held weakly and
+         *     has been garbage collected
+         */
+        public Object getReceiver()
+        {
+            return (weakReceiver != null) ? weakReceiver.get() : receiver;
+        }
+
+
+        // ----------------------------------------------------------
+        /**
+         * Resolves the method that takes only the observable object. This is
+         * called when the observer is added, before it can be notified.
+         *
+         * @param object the observable object
+         */
+        public void bind(Observable object)
         {
-            // Create a new argument array that has the observable object
-            // first, followed by the remaining arguments.
-            Object[] realArgs = new Object[arguments.length + 1];
-            realArgs[0] = object;
-            System.arraycopy(arguments, 0, realArgs, 1, arguments.length);
-
-            // Try to dispatch first to the one that takes the actual
-            // arguments, or to one that just takes the observable object.
-            @SuppressWarnings("unused")
-            boolean result =
-                    event.dispatch(receiver, realArgs) ||
-                    event.dispatch(receiver, object);
+            Object receiver = getReceiver();
+
+            if (receiver != null)
+            {
+                plainInvoker =
+                        event.resolveInvoker(receiver, object.getClass());
+            }
+        }
+
+
+        // ----------------------------------------------------------
+        public void observe(Observable object, Object... arguments)
+        {
+            Object receiver = getReceiver();
+
+            if (receiver == null)
+            {
+                object.removeObserver(this);
+                return;
+            }
+
+            if (arguments.length == 0)
+            {
+                if (plainInvoker != null)
+                {
+                    plainInvoker.invokePrepended(
+                            receiver, object, NO_ARGUMENTS);
+                }
+
+                return;
+            }
+
+            Binding current = findBinding(bindings, arguments);
+
+            if (current == null)
+            {
+                current = resolve(receiver, object, arguments);
+                addBinding(current);
+            }
+
+            // Call the one that takes the actual arguments, or else the one
+            // that just takes the observable object.
+            if (current.invoker != null)
+            {
+                current.invoker.invokePrepended(receiver, object, arguments);
+            }
+            else if (plainInvoker != null)
+            {
+                plainInvoker.invokePrepended(
+                        receiver, object, NO_ARGUMENTS);
+            }
+        }
+
+
+        // ----------------------------------------------------------
+        /**
+         * Resolves the method that takes the observable object followed by
+         * arguments of the same classes as the specified ones.
+         */
+        private Binding resolve(
+                Object receiver, Observable object, Object[] arguments)
+        {
+            Class<?>[] argTypes = new Class<?>[arguments.length];
+            Class<?>[] paramTypes = new Class<?>[arguments.length + 1];
+            paramTypes[0] = object.getClass();
+
+            for (int i = 0; i < arguments.length; i++)
+            {
+                argTypes[i] = (arguments[i] != null)
+                        ? arguments[i].getClass() : null;
+                paramTypes[i + 1] = argTypes[i];
+            }
+
+            return new Binding(
+                    argTypes, event.resolveInvoker(receiver, paramTypes));
+        }
+
+
+        // ----------------------------------------------------------
+        /**
+         * Adds a binding, replacing the oldest one if the observer already
+         * has as many as it keeps.
+         */
+        private synchronized void addBinding(Binding binding)
+        {
+            Binding[] oldBindings = bindings;
+
+            // Another thread may have resolved the same classes meanwhile.
+            for (Binding existing : oldBindings)
+            {
+                if (Arrays.equals(existing.argTypes, binding.argTypes))
+                {
+                    return;
+                }
+            }
+
+            int kept = Math.min(oldBindings.length, MAX_BINDINGS - 1);
+            Binding[] newBindings = new Binding[kept + 1];
+            System.arraycopy(oldBindings, oldBindings.length - kept,
+                    newBindings, 0, kept);
+            newBindings[kept] = binding;
+            bindings = newBindings;
+        }
+
+
+        // ----------------------------------------------------------
+        /**
+         * Finds the binding for arguments of the same classes as the
+         * specified ones.
+         *
+         * @param array the bindings to search
+         * @param arguments the arguments
+         * @return the binding, or null if there is none in the array
+         */
+        private static Binding findBinding(
+                Binding[] array, Object[] arguments)
+        {
+            for (int i = array.length - 1; i >= 0; i--)
+            {
+                if (array[i].matches(arguments))
+                {
+                    return array[i];
+                }
+            }
+
+            return null;
         }
 
 
@@ -282,7 +758,7 @@ public abstract class Observable
         @Override
         public int hashCode()
         {
-            return receiver.getClass().hashCode() ^ method.hashCode();
+            return receiverHash ^ method.hashCode();
         }
 
 
@@ -294,7 +770,10 @@ public abstract class Observable
             {
                 Observer otherObserver = (Observer) other;
 
-                return receiver == otherObserver.receiver
+                Object receiver = getReceiver();
+
+                return receiver != null
+                        && receiver == otherObserver.getReceiver()
                         && method.equals(otherObserver.method);
             }
             else
@@ -303,4 +782,53 @@ public abstract class Observable
             }
         }
     }
+
+
+    // ----------------------------------------------------------
+    /**
+     * The method resolved for notifications whose arguments have particular
+     * classes.
+     */
+    private static class Binding
+    {
+        //~ Fields ............................................................
+
+        private final Class<?>[] argTypes;
+        private final MethodInvoker invoker;
+
+
+        //~ Constructors ......................................................
+
+        // ----------------------------------------------------------
+        public Binding(Class<?>[] argTypes, MethodInvoker invoker)
+        {
+            this.argTypes = argTypes;
+            this.invoker = invoker;
+        }
+
+
+        //~ Methods ...........................................................
+
+        // ----------------------------------------------------------
+        public boolean matches(Object[] arguments)
+        {
+            if (arguments.length != argTypes.length)
+            {
+                return false;
+            }
+
+            for (int i = 0; i < arguments.length; i++)
+            {
+                Class<?> type = (arguments[i] != null)
+                        ? arguments[i].getClass() : null;
+
+                if (type != argTypes[i])
+                {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+    }
 }
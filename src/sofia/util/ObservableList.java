@@ -18,9 +18,13 @@ package sofia.util;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.Map;
 
 // -------------------------------------------------------------------------
 /**
@@ -30,7 +34,36 @@ import java.util.ListIterator;
  * </p><p>
  * Users of this class can add themselves as observers to an instance of this
  * class and they will be notified when the structure of the list changes; that
- * is, when items are added, removed, or replaced.
+ * is, when items are added, removed, replaced, or moved. An observer whose
+ * {@code changeWasObserved} method takes a {@link ListChange} after the list
+ * is told which items were affected, so that it can update only those:
+ * </p>
+ * <pre>
+ * public void changeWasObserved(ObservableList&lt;Item&gt; list,
+ *     ListChange change)</pre>
+ * <p>
+ * An observer whose method takes only the list is simply told that the list
+ * changed.
+ * </p><p>
+ * Each change normally notifies the observers as soon as it is made. To make
+ * many changes at once, such as when loading a large number of items, wrap
+ * them in a batch so that the observers are notified only once, after the
+ * last change:
+ * </p>
+ * <pre>
+ * list.batch(new Runnable() {
+ *     public void run()
+ *     {
+ *         for (Item item : items)
+ *         {
+ *             list.add(item);
+ *         }
+ *     }
+ * });</pre>
+ * <p>
+ * To refresh the list from a data source, pass the new contents to
+ * {@link #setAll(Collection)}; only the items that were actually inserted,
+ * removed, moved, or replaced are reported to the observers.
  * </p>
  *
  * @param <E> the type of element stored in the list
@@ -43,8 +76,18 @@ public class ObservableList<E>
 {
     //~ Fields ................................................................
 
+    // The most diagonal positions that setAll may keep while diffing, which
+    // is about a thousand differences; past that, it replaces the changed
+    // range outright.
+    private static final int MAX_DIFF_TRACE_SIZE = 1 << 20;
+
     private List<E> contents;
 
+    // The number of batches currently open, and the combined change made
+    // while one was open (or null if nothing has changed yet).
+    private int batchDepth;
+    private ListChange batchChange;
+
 
     //~ Constructors ..........................................................
 
@@ -104,12 +147,300 @@ public class ObservableList<E>
 
     //~ Methods ...............................................................
 
+    // ----------------------------------------------------------
+    /**
+     * <p>
+     * Starts a batch of changes. Until the matching call to
+     * {@link #endBatch()}, changes to the list do not notify the observers;
+     * instead, they are notified once when the batch ends, if anything
+     * changed.
+     * </p><p>
+     * Batches can be nested; the observers are notified when the outermost
+     * batch ends. The {@link ListChange} they receive covers every change in
+     * the batch: adjacent insertions, removals, or replacements are combined
+     * into one range, and anything else is reported as a reset.
+     * </p><p>
+     * Every call to this method must be matched by a call to
+     * {@code endBatch()}, even if an exception is thrown, so it is usually
+     * easier to call {@link #batch(Runnable)} instead.
+     * </p>
+     */
+    public synchronized void beginBatch()
+    {
+        batchDepth++;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Ends a batch of changes started by {@link #beginBatch()}. If this ends
+     * the outermost batch and the list was changed during it, the observers
+     * are notified.
+     *
+     * @throws IllegalStateException if no batch has been started
+     */
+    public void endBatch()
+    {
+        ListChange change = null;
+
+        synchronized (this)
+        {
+            if (batchDepth == 0)
+            {
+                throw new IllegalStateException(
+                        "endBatch() called without a matching beginBatch()");
+            }
+
+            batchDepth--;
+
+            if (batchDepth == 0)
+            {
+                change = batchChange;
+                batchChange = null;
+            }
+        }
+
+        // Notify outside the lock, as a change made outside of a batch would.
+        if (change != null)
+        {
+            notifyChange(change);
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Runs the specified code as a batch of changes, so that the observers
+     * are notified once when it finishes rather than once for every change
+     * it makes. The batch is ended even if the code throws an exception.
+     *
+     * @param changes the code that changes the list
+     */
+    public void batch(Runnable changes)
+    {
+        beginBatch();
+
+        try
+        {
+            changes.run();
+        }
+        finally
+        {
+            endBatch();
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Notifies the observers of a change, or, if a batch is in progress,
+     * records that the observers should be notified when it ends. Since the
+     * change is not described, a batch that includes it is reported as a
+     * reset.
+     *
+     * @param arguments the arguments to pass to the observers
+     */
+    @Override
+    public void notifyObservers(Object... arguments)
+    {
+        synchronized (this)
+        {
+            if (batchDepth > 0)
+            {
+                batchChange = ListChange.reset();
+                return;
+            }
+        }
+
+        super.notifyObservers(arguments);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Combines the {@link ListChange}s of two notifications waiting to be
+     * delivered on the main thread, in the same way as the changes in a
+     * batch. A notification that does not describe its change combines into
+     * a reset.
+     *
+     * @param earlier the arguments of the earlier notification
+     * @param later the arguments of the later notification
+     * @return the arguments of a single notification that stands for both
+     */
+    @Override
+    protected Object[] combineNotifications(Object[] earlier, Object[] later)
+    {
+        ListChange change;
+
+        if (earlier.length == 1 && earlier[0] instanceof ListChange
+                && later.length == 1 && later[0] instanceof ListChange)
+        {
+            change = ((ListChange) earlier[0]).followedBy(
+                    (ListChange) later[0]);
+        }
+        else
+        {
+            change = ListChange.reset();
+        }
+
+        return new Object[] { change };
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Moves the item at one index to another, shifting the items between
+     * them. After the move, the item is at index {@code to}.
+     *
+     * @param from the index of the item to move
+     * @param to the index the item should have after the move
+     * @throws IndexOutOfBoundsException if either index is out of range
+     */
+    public void move(int from, int to)
+    {
+        int size = contents.size();
+
+        if (from < 0 || from >= size || to < 0 || to >= size)
+        {
+            throw new IndexOutOfBoundsException("From: " + from
+                    + ", To: " + to + ", Size: " + size);
+        }
+
+        if (from != to)
+        {
+            contents.add(to, contents.remove(from));
+
+            changed(ListChange.moved(from, to));
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Replaces the contents of the list with the items in the specified
+     * collection, comparing items with {@code equals}. See
+     * {@link #setAll(Collection, KeyExtractor)}.
+     *
+     * @param items the new contents of the list
+     */
+    public void setAll(Collection<? extends E> items)
+    {
+        setAll(items, null);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * <p>
+     * Replaces the contents of the list with the items in the specified
+     * collection, making as few changes as possible. The old and new
+     * contents are compared to find the shortest sequence of insertions and
+     * removals that turns one into the other, and an item that was removed
+     * in one place and inserted in another is moved instead. Observers are
+     * notified of each of these changes, with adjacent insertions or
+     * removals reported as one range, rather than of a change to the whole
+     * list; refreshing a long list in which little has changed therefore
+     * only updates the affected rows.
+     * </p><p>
+     * Items are matched by the keys that {@code keys} extracts from them,
+     * such as a database ID, or by the items themselves if {@code keys} is
+     * null. When a matched item is not {@code equals} to the old one, it
+     * replaces the old one and is reported as changed; otherwise, the old
+     * item is kept.
+     * </p><p>
+     * Finding the changes takes time proportional to the size of the list
+     * times the number of differences. If the contents differ too much to
+     * make that worthwhile, the differing range is simply removed and the
+     * new items inserted.
+     * </p>
+     *
+     * @param items the new contents of the list
+     * @param keys extracts the key that identifies each item, or null to
+     *     compare the items themselves
+     */
+    public void setAll(
+            Collection<? extends E> items, KeyExtractor<? super E> keys)
+    {
+        List<E> newItems = new ArrayList<E>(items);
+        int oldSize = contents.size();
+        int newSize = newItems.size();
+
+        // Most refreshes leave the beginning and end of the list alone, so
+        // only the range between them is compared in full.
+        int start = 0;
+        while (start < oldSize && start < newSize
+                && ListDiff.equal(keyOf(contents.get(start), keys),
+                        keyOf(newItems.get(start), keys)))
+        {
+            update(start, newItems.get(start));
+            start++;
+        }
+
+        int oldEnd = oldSize;
+        int newEnd = newSize;
+        while (oldEnd > start && newEnd > start
+                && ListDiff.equal(keyOf(contents.get(oldEnd - 1), keys),
+                        keyOf(newItems.get(newEnd - 1), keys)))
+        {
+            oldEnd--;
+            newEnd--;
+        }
+
+        if (oldEnd > start || newEnd > start)
+        {
+            List<E> newMiddle = newItems.subList(start, newEnd);
+            boolean diffed = false;
+
+            // A pure insertion or removal is reported as it is; a diff could
+            // not find anything better, and would search for a long time
+            // before giving up on a large one.
+            if (oldEnd > start && newEnd > start)
+            {
+                Object[] oldKeys =
+                        keysOf(contents.subList(start, oldEnd), keys);
+                Object[] newKeys = keysOf(newMiddle, keys);
+
+                ListDiff diff = ListDiff.compute(
+                        oldKeys, newKeys, MAX_DIFF_TRACE_SIZE);
+
+                if (diff != null)
+                {
+                    new DiffApplier(start, oldKeys, newKeys, newMiddle)
+                            .apply(diff);
+                    diffed = true;
+                }
+            }
+
+            if (!diffed)
+            {
+                if (oldEnd > start)
+                {
+                    contents.subList(start, oldEnd).clear();
+                    changed(ListChange.removed(start, oldEnd - start));
+                }
+
+                if (newEnd > start)
+                {
+                    contents.addAll(start, newMiddle);
+                    changed(ListChange.inserted(start, newMiddle.size()));
+                }
+            }
+        }
+
+        // The matching items at the end are now where they belong.
+        for (int i = newEnd; i < newSize; i++)
+        {
+            update(i, newItems.get(i));
+        }
+    }
+
+
     // ----------------------------------------------------------
     public void add(int index, E item)
     {
         contents.add(index, item);
 
-        notifyObservers();
+        changed(ListChange.inserted(index, 1));
     }
 
 
@@ -118,7 +449,10 @@ public class ObservableList<E>
     {
         boolean result = contents.add(item);
 
-        notifyObservers();
+        if (result)
+        {
+            changed(ListChange.inserted(contents.size() - 1, 1));
+        }
 
         return result;
     }
@@ -127,9 +461,13 @@ public class ObservableList<E>
     // ----------------------------------------------------------
     public boolean addAll(int index, Collection<? extends E> collection)
     {
+        int oldSize = contents.size();
         boolean result = contents.addAll(index, collection);
 
-        notifyObservers();
+        if (result)
+        {
+            changed(ListChange.inserted(index, contents.size() - oldSize));
+        }
 
         return result;
     }
@@ -138,9 +476,13 @@ public class ObservableList<E>
     // ----------------------------------------------------------
     public boolean addAll(Collection<? extends E> collection)
     {
+        int oldSize = contents.size();
         boolean result = contents.addAll(collection);
 
-        notifyObservers();
+        if (result)
+        {
+            changed(ListChange.inserted(oldSize, contents.size() - oldSize));
+        }
 
         return result;
     }
@@ -149,9 +491,13 @@ public class ObservableList<E>
     // ----------------------------------------------------------
     public void clear()
     {
+        int oldSize = contents.size();
         contents.clear();
 
-        notifyObservers();
+        if (oldSize > 0)
+        {
+            changed(ListChange.removed(0, oldSize));
+        }
     }
 
 
@@ -193,7 +539,7 @@ public class ObservableList<E>
     // ----------------------------------------------------------
     public Iterator<E> iterator()
     {
-        return new NotifyingIterator(contents.iterator());
+        return new NotifyingListIterator(contents.listIterator());
     }
 
 
@@ -223,7 +569,7 @@ public class ObservableList<E>
     {
         E result = contents.remove(index);
 
-        notifyObservers();
+        changed(ListChange.removed(index, 1));
 
         return result;
     }
@@ -232,11 +578,15 @@ public class ObservableList<E>
     // ----------------------------------------------------------
     public boolean remove(Object object)
     {
-        boolean result = contents.remove(object);
+        int index = contents.indexOf(object);
 
-        notifyObservers();
+        if (index == -1)
+        {
+            return false;
+        }
 
-        return result;
+        remove(index);
+        return true;
     }
 
 
@@ -245,7 +595,10 @@ public class ObservableList<E>
     {
         boolean result = contents.removeAll(collection);
 
-        notifyObservers();
+        if (result)
+        {
+            changed(ListChange.reset());
+        }
 
         return result;
     }
@@ -256,7 +609,10 @@ public class ObservableList<E>
     {
         boolean result = contents.retainAll(collection);
 
-        notifyObservers();
+        if (result)
+        {
+            changed(ListChange.reset());
+        }
 
         return result;
     }
@@ -267,7 +623,7 @@ public class ObservableList<E>
     {
         E result = contents.set(index, item);
 
-        notifyObservers();
+        changed(ListChange.changed(index, 1));
 
         return result;
     }
@@ -301,41 +657,312 @@ public class ObservableList<E>
     }
 
 
+    //~ Private methods .......................................................
+
+    // ----------------------------------------------------------
+    private static <E> Object keyOf(E item, KeyExtractor<? super E> keys)
+    {
+        return (keys != null) ? keys.getKey(item) : item;
+    }
+
+
+    // ----------------------------------------------------------
+    private static <E> Object[] keysOf(
+            List<E> items, KeyExtractor<? super E> keys)
+    {
+        Object[] result = new Object[items.size()];
+
+        for (int i = 0; i < result.length; i++)
+        {
+            result[i] = keyOf(items.get(i), keys);
+        }
+
+        return result;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Replaces the item at the specified index with a matching item from
+     * {@link #setAll(Collection, KeyExtractor)}, if they are not equal.
+     *
+     * @param index the index of the item
+     * @param item the matching item
+     */
+    private void update(int index, E item)
+    {
+        if (!ListDiff.equal(contents.get(index), item))
+        {
+            contents.set(index, item);
+            changed(ListChange.changed(index, 1));
+        }
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Notifies the observers of a change, or, if a batch is in progress,
+     * combines it with the changes made earlier in the batch.
+     *
+     * @param change the change
+     */
+    private void changed(ListChange change)
+    {
+        synchronized (this)
+        {
+            if (batchDepth > 0)
+            {
+                batchChange = (batchChange == null)
+                        ? change : batchChange.followedBy(change);
+                return;
+            }
+        }
+
+        notifyChange(change);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Notifies the observers of a change that is not part of a batch, or of
+     * the combined change made by a batch that has ended.
+     * {@link ConcurrentObservableList} overrides this to hold the change
+     * until it has released its lock.
+     *
+     * @param change the change
+     */
+    void notifyChange(ListChange change)
+    {
+        super.notifyObservers(change);
+    }
+
+
     //~ Nested classes ........................................................
 
     // ----------------------------------------------------------
-    private class NotifyingIterator implements Iterator<E>
+    /**
+     * Extracts the key that identifies an item, so that
+     * {@link ObservableList#setAll(Collection, KeyExtractor)} can tell that
+     * an item in the new contents is an updated version of one in the old
+     * contents.
+     *
+     * @param <E> the type of the items
+     */
+    public interface KeyExtractor<E>
+    {
+        // ----------------------------------------------------------
+        /**
+         * Gets the key that identifies an item. Keys are compared with
+         * {@code equals} and hashed with {@code hashCode}.
+         *
+         * @param item the item
+         * @return the key for the item
+         */
+        Object getKey(E item);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Applies the edit script found by {@link ListDiff} to the range of the
+     * list that {@link ObservableList#setAll(Collection, KeyExtractor)} is
+     * replacing, notifying the observers of each change as it is made.
+     */
+    private class DiffApplier
     {
-        private Iterator<E> iterator;
+        private final int start;
+        private final Object[] oldKeys;
+        private final Object[] newKeys;
+        private final List<E> newItems;
+
+        // The old index of each item now in the range, or -1 for an item
+        // that was inserted, so that moved items can be found.
+        private final List<Integer> tags;
+
+        // The position in the range where the next new item belongs, and
+        // the removals and insertions waiting to be made there.
+        private int position;
+        private int pendingRemovals;
+        private final List<E> pendingInsertions = new ArrayList<E>();
 
 
         // ----------------------------------------------------------
-        public NotifyingIterator(Iterator<E> iterator)
+        public DiffApplier(int start, Object[] oldKeys, Object[] newKeys,
+                List<E> newItems)
         {
-            this.iterator = iterator;
+            this.start = start;
+            this.oldKeys = oldKeys;
+            this.newKeys = newKeys;
+            this.newItems = newItems;
+            this.tags = new ArrayList<Integer>(oldKeys.length);
+
+            for (int i = 0; i < oldKeys.length; i++)
+            {
+                tags.add(i);
+            }
         }
 
 
         // ----------------------------------------------------------
-        public boolean hasNext()
+        public void apply(ListDiff diff)
         {
-            return iterator.hasNext();
+            // Pair each deletion with an insertion of the same key, if any,
+            // so that the item is moved instead.
+            Map<Object, LinkedList<Integer>> deletions =
+                    new HashMap<Object, LinkedList<Integer>>();
+
+            for (int op = 0; op < diff.size(); op++)
+            {
+                if (diff.getOperation(op) == ListDiff.DELETE)
+                {
+                    Object key = oldKeys[diff.getOldIndex(op)];
+                    LinkedList<Integer> indices = deletions.get(key);
+
+                    if (indices == null)
+                    {
+                        indices = new LinkedList<Integer>();
+                        deletions.put(key, indices);
+                    }
+
+                    indices.add(diff.getOldIndex(op));
+                }
+            }
+
+            int[] moveSources = new int[newKeys.length];
+            boolean[] isMoveSource = new boolean[oldKeys.length];
+            boolean[] wasMoved = new boolean[oldKeys.length];
+
+            for (int op = 0; op < diff.size(); op++)
+            {
+                if (diff.getOperation(op) == ListDiff.INSERT)
+                {
+                    int j = diff.getNewIndex(op);
+                    LinkedList<Integer> indices = deletions.get(newKeys[j]);
+
+                    moveSources[j] = -1;
+
+                    if (indices != null && !indices.isEmpty())
+                    {
+                        moveSources[j] = indices.removeFirst();
+                        isMoveSource[moveSources[j]] = true;
+                    }
+                }
+            }
+
+            for (int op = 0; op < diff.size(); op++)
+            {
+                int i = diff.getOldIndex(op);
+                int j = diff.getNewIndex(op);
+
+                switch (diff.getOperation(op))
+                {
+                    case ListDiff.KEEP:
+                        flush();
+                        update(start + position, newItems.get(j));
+                        position++;
+                        break;
+
+                    case ListDiff.DELETE:
+                        if (!isMoveSource[i])
+                        {
+                            flushInsertions();
+                            pendingRemovals++;
+                        }
+                        else if (!wasMoved[i])
+                        {
+                            // Leave it until its new position is reached.
+                            flush();
+                            position++;
+                        }
+                        break;
+
+                    case ListDiff.INSERT:
+                        if (moveSources[j] == -1)
+                        {
+                            flushRemovals();
+                            pendingInsertions.add(newItems.get(j));
+                        }
+                        else
+                        {
+                            flush();
+                            int from = tags.indexOf(moveSources[j]);
+
+                            if (from < position)
+                            {
+                                // Its deletion was passed already.
+                                move(from, position - 1);
+                                update(start + position - 1,
+                                        newItems.get(j));
+                            }
+                            else
+                            {
+                                move(from, position);
+                                update(start + position, newItems.get(j));
+                                position++;
+                                wasMoved[moveSources[j]] = true;
+                            }
+                        }
+                        break;
+                }
+            }
+
+            flush();
         }
 
 
         // ----------------------------------------------------------
-        public E next()
+        private void move(int from, int to)
         {
-            return iterator.next();
+            if (from != to)
+            {
+                contents.add(start + to, contents.remove(start + from));
+                tags.add(to, tags.remove(from));
+
+                changed(ListChange.moved(start + from, start + to));
+            }
         }
 
 
         // ----------------------------------------------------------
-        public void remove()
+        private void flush()
         {
-            iterator.remove();
+            flushRemovals();
+            flushInsertions();
+        }
+
+
+        // ----------------------------------------------------------
+        private void flushRemovals()
+        {
+            if (pendingRemovals > 0)
+            {
+                int index = start + position;
 
-            notifyObservers();
+                contents.subList(index, index + pendingRemovals).clear();
+                tags.subList(position, position + pendingRemovals).clear();
+
+                changed(ListChange.removed(index, pendingRemovals));
+                pendingRemovals = 0;
+            }
+        }
+
+
+        // ----------------------------------------------------------
+        private void flushInsertions()
+        {
+            int count = pendingInsertions.size();
+
+            if (count > 0)
+            {
+                int index = start + position;
+
+                contents.addAll(index, pendingInsertions);
+                tags.addAll(position, Collections.nCopies(count, -1));
+
+                changed(ListChange.inserted(index, count));
+                position += count;
+                pendingInsertions.clear();
+            }
         }
     }
 
@@ -345,6 +972,9 @@ public class ObservableList<E>
     {
         private ListIterator<E> iterator;
 
+        // The index of the item last returned by next() or previous().
+        private int lastIndex = -1;
+
 
         // ----------------------------------------------------------
         public NotifyingListIterator(ListIterator<E> iterator)
@@ -356,9 +986,11 @@ public class ObservableList<E>
         // ----------------------------------------------------------
         public void add(E item)
         {
+            int index = iterator.nextIndex();
             iterator.add(item);
+            lastIndex = -1;
 
-            notifyObservers();
+            changed(ListChange.inserted(index, 1));
         }
 
 
@@ -379,7 +1011,11 @@ public class ObservableList<E>
         // ----------------------------------------------------------
         public E next()
         {
-            return iterator.next();
+            int index = iterator.nextIndex();
+            E result = iterator.next();
+            lastIndex = index;
+
+            return result;
         }
 
 
@@ -393,7 +1029,11 @@ public class ObservableList<E>
         // ----------------------------------------------------------
         public E previous()
         {
-            return iterator.previous();
+            int index = iterator.previousIndex();
+            E result = iterator.previous();
+            lastIndex = index;
+
+            return result;
         }
 
 
@@ -409,7 +1049,8 @@ public class ObservableList<E>
         {
             iterator.remove();
 
-            notifyObservers();
+            changed(ListChange.removed(lastIndex, 1));
+            lastIndex = -1;
         }
 
 
@@ -418,7 +1059,7 @@ public class ObservableList<E>
         {
             iterator.set(item);
 
-            notifyObservers();
+            changed(ListChange.changed(lastIndex, 1));
         }
     }
 }
@@ -21,6 +21,7 @@ import java.lang.ref.WeakReference;
 import sofia.app.Screen;
 import sofia.app.internal.LifecycleInjection;
 import sofia.app.internal.ScreenMixin;
+import sofia.internal.events.DispatchMetrics;
 import sofia.internal.events.EventDispatcher;
 import android.content.Context;
 import android.os.Handler;
@@ -294,6 +295,13 @@ public class Timer
                     long realDelay = repeatDelay
                             - (System.currentTimeMillis() - startTime);
 
+                    if (realDelay < 0)
+                    {
+                        DispatchMetrics.recordTimerOverrun(
+                                receiver.getClass(),
+                                timerFired.getMethodName());
+                    }
+
                     post(realDelay);
                 }
             }
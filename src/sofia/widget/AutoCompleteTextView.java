@@ -16,6 +16,7 @@
 
 package sofia.widget;
 
+import sofia.util.ConcurrentObservableList;
 import sofia.util.ObservableList;
 
 import android.content.Context;
@@ -26,12 +27,21 @@ import java.util.List;
 
 //-------------------------------------------------------------------------
 /**
+ * <p>
  * A subclass of {@link android.widget.AutoCompleteTextView} that is easier to
  * use. It provides methods like those in the {@link List} interface
  * ({@code add}, {@code remove}, {@code get}, and {@code set}, among others) to
  * manipulate the contents of the list, as well as an accessor method
  * {@link #getList()} that returns a {@link List} that automatically refreshes
  * the list when its structure is changed.
+ * </p><p>
+ * Like any {@link ObservableList}, the list must only be changed on the main
+ * thread, since the text view reads it directly. To change it on other threads
+ * as well, give the text view a {@link ConcurrentObservableList} with
+ * {@link #setList(ObservableList)}; changes made on a background thread are
+ * then shown when the main thread is next free to handle them, and until then,
+ * the suggestions come from the items the text view had.
+ * </p>
  *
  * @param <E> the type of elements stored in the {@code AutoCompleteTextView}
  *
@@ -110,6 +120,29 @@ public class AutoCompleteTextView<E>
     }
 
 
+    // ----------------------------------------------------------
+    /**
+     * Replaces the list of items that is managed by this text view. The text
+     * view shows the items in the new list and refreshes itself when its
+     * structure is changed, as described in {@link #getList()}, and stops
+     * observing the old list.
+     * <p>
+     * Pass a {@link ConcurrentObservableList} to be able to change the list
+     * on any thread. Its iterators and sublists are read-only views of the
+     * list as it was when they were created, and each insertion, removal,
+     * or replacement copies the list, so it is best suited to lists that
+     * are read far more often than they are changed.
+     * </p>
+     *
+     * @param newList the list of items to manage
+     */
+    public void setList(ObservableList<E> newList)
+    {
+        list.removeObserver(observer);
+        attach(newList);
+    }
+
+
     // ----------------------------------------------------------
     /**
      * Adds an item to the text view.
@@ -250,13 +283,36 @@ public class AutoCompleteTextView<E>
      */
     private void init(AttributeSet attrs)
     {
-        list = new ObservableList<E>();
+        attach(new ObservableList<E>());
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Makes the specified list the one that this text view shows, and starts
+     * observing it.
+     *
+     * @param newList the list to show
+     */
+    private void attach(ObservableList<E> newList)
+    {
+        list = newList;
 
         adapter = new DecoratingAdapter<E>(getContext(),
                 android.R.layout.simple_dropdown_item_1line, list);
         setAdapter(adapter);
 
-        list.addObserver(observer);
+        // A concurrent list can be changed by background threads, so its
+        // changes are delivered to the observer on the main thread, since it
+        // touches the adapter. Until then, the adapter keeps showing the
+        // snapshot it took at the last delivery, so the adapter view never
+        // sees the list change unannounced.
+        if (list instanceof ConcurrentObservableList)
+        {
+            list.setNotifyingOnMainThread(true);
+        }
+
+        list.addWeakObserver(observer);
     }
 
 
@@ -265,7 +321,9 @@ public class AutoCompleteTextView<E>
     // ----------------------------------------------------------
     /**
      * The observer is pulled into a separate object so that we do not expose
-     * the changeWasObserved method in the class's public interface.
+     * the changeWasObserved method in the class's public interface. The list
+     * only holds it weakly, so this field is what keeps it alive; a list that
+     * outlives the widget does not keep the widget alive.
      */
     private final Object observer = new Object()
     {
@@ -16,6 +16,9 @@
 
 package sofia.widget;
 
+import sofia.internal.ClassIndex;
+import sofia.util.ConcurrentObservableList;
+
 import android.content.Context;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -50,6 +53,14 @@ public class DecoratingAdapter<E>
     //~ Fields ................................................................
 
     private List<E> list;
+    private List<E> source;
+
+    // The items that the adapter shows. If the list is a
+    // ConcurrentObservableList, this is the snapshot taken when the adapter
+    // was last told that the data changed, so that the count and the items
+    // that the adapter view reads agree with each other, and with what it
+    // was last notified about, while another thread changes the list.
+    private List<E> items;
     private LayoutInflater inflater;
     private int defaultViewResId;
 
@@ -65,6 +76,8 @@ public class DecoratingAdapter<E>
             List<E> list)
     {
         this.list = list;
+        this.source = list;
+        this.items = currentItems();
         this.inflater = (LayoutInflater) context.getSystemService(
             Context.LAYOUT_INFLATER_SERVICE);
         this.defaultViewResId = defaultViewResId;
@@ -76,14 +89,14 @@ public class DecoratingAdapter<E>
     // ----------------------------------------------------------
     public int getCount()
     {
-        return list.size();
+        return items.size();
     }
 
 
     // ----------------------------------------------------------
     public E getItem(int position)
     {
-        return list.get(position);
+        return items.get(position);
     }
 
 
@@ -178,6 +191,34 @@ public class DecoratingAdapter<E>
     }
 
 
+    // ----------------------------------------------------------
+    /**
+     * Takes the list's current contents and notifies the adapter view that
+     * they changed. Like the other notifications, this must be called on
+     * the main thread.
+     */
+    @Override
+    public void notifyDataSetChanged()
+    {
+        items = currentItems();
+        super.notifyDataSetChanged();
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Takes the list's current contents and notifies the adapter view that
+     * they are no longer valid. Like the other notifications, this must be
+     * called on the main thread.
+     */
+    @Override
+    public void notifyDataSetInvalidated()
+    {
+        items = currentItems();
+        super.notifyDataSetInvalidated();
+    }
+
+
     // ----------------------------------------------------------
     @Override
     public Filter getFilter()
@@ -191,8 +232,54 @@ public class DecoratingAdapter<E>
     }
 
 
+    //~ Package-private methods ...............................................
+
+    // ----------------------------------------------------------
+    /**
+     * Takes the list's current contents without notifying the adapter view,
+     * so that rows whose items were replaced can be bound again in place.
+     * The adapter view must be notified whenever the number of items
+     * changes, so the contents are only taken if it is the same.
+     *
+     * @return true if the contents were taken, or false if the number of
+     *     items has changed and {@link #notifyDataSetChanged()} must be
+     *     called instead
+     */
+    boolean refreshItems()
+    {
+        List<E> current = currentItems();
+
+        if (current.size() != items.size())
+        {
+            return false;
+        }
+
+        items = current;
+        return true;
+    }
+
+
     //~ Private methods .......................................................
 
+    // ----------------------------------------------------------
+    /**
+     * Gets the items that the adapter should show now: the current snapshot
+     * of the list if it is a {@link ConcurrentObservableList}, or otherwise
+     * the list itself.
+     *
+     * @return the items to show
+     */
+    private List<E> currentItems()
+    {
+        if (list instanceof ConcurrentObservableList)
+        {
+            return ((ConcurrentObservableList<E>) list).snapshot();
+        }
+
+        return list;
+    }
+
+
     // ----------------------------------------------------------
     @SuppressWarnings("unchecked")
     private static <ResultType> ResultType decorate(
@@ -229,24 +316,39 @@ public class DecoratingAdapter<E>
 
 
     // ----------------------------------------------------------
-    /**
-     * TODO Replace with reflection API.
-     */
     private static Method getAnnotatedMethod(
             Class<?> itemClass, Class<? extends Annotation> annotation)
     {
-        Method method = null;
+        return ClassIndex.forClass(itemClass).getAnnotatedMethod(annotation);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Gets the items that the filter should search. If the adapter's list is
+     * a {@link ConcurrentObservableList}, this is its current snapshot, which
+     * the filter thread can read without copying or locking while the main
+     * thread changes the list. Otherwise, it is a copy of the list as it was
+     * when the adapter was first filtered.
+     *
+     * @return the items to filter
+     */
+    private List<E> filterableItems()
+    {
+        if (source instanceof ConcurrentObservableList)
+        {
+            return ((ConcurrentObservableList<E>) source).snapshot();
+        }
 
-        for (Method currentMethod : itemClass.getMethods())
+        synchronized (lock)
         {
-            if (currentMethod.getAnnotation(annotation) != null)
+            if (originalList == null)
             {
-                method = currentMethod;
-                break;
+                originalList = new ArrayList<E>(source);
             }
-        }
 
-        return method;
+            return new ArrayList<E>(originalList);
+        }
     }
 
 
@@ -260,37 +362,17 @@ public class DecoratingAdapter<E>
         protected FilterResults performFiltering(CharSequence prefix)
         {
             FilterResults results = new FilterResults();
-
-            if (originalList == null)
-            {
-                synchronized (lock)
-                {
-                    originalList = new ArrayList<E>(list);
-                }
-            }
+            List<E> values = filterableItems();
 
             if (prefix == null || prefix.length() == 0)
             {
-                ArrayList<E> list;
-                synchronized (lock)
-                {
-                    list = new ArrayList<E>(originalList);
-                }
-
-                results.values = list;
-                results.count = list.size();
+                results.values = values;
+                results.count = values.size();
             }
             else
             {
                 String prefixString = prefix.toString().toLowerCase();
 
-                ArrayList<E> values;
-
-                synchronized (lock)
-                {
-                    values = new ArrayList<E>(originalList);
-                }
-
                 int count = values.size();
                 ArrayList<E> newValues = new ArrayList<E>();
 
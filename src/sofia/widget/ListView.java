@@ -16,22 +16,34 @@
 
 package sofia.widget;
 
+import sofia.util.ListChange;
+import sofia.util.ConcurrentObservableList;
 import sofia.util.ObservableList;
 
 import android.content.Context;
 import android.util.AttributeSet;
+import android.view.View;
 
 import java.util.Collection;
 import java.util.List;
 
 //-------------------------------------------------------------------------
 /**
+ * <p>
  * A subclass of {@link android.widget.ListView} that is easier to use. It
  * provides methods like those in the {@link List} interface ({@code add},
  * {@code remove}, {@code get}, and {@code set}, among others) to manipulate
  * the contents of the list, as well as an accessor method {@link #getList()}
  * that returns a {@link List} that automatically refreshes the list view when
  * its structure is changed.
+ * </p><p>
+ * Like any {@link ObservableList}, the list must only be changed on the main
+ * thread, since the list view reads it directly. To change it on other threads
+ * as well, give the list view a {@link ConcurrentObservableList} with
+ * {@link #setList(ObservableList)}; changes made on a background thread are
+ * then shown when the main thread is next free to handle them, and until then,
+ * the list view goes on showing the items it had.
+ * </p>
  *
  * @param <E> the type of elements stored in the {@code ListView}
  *
@@ -108,6 +120,29 @@ public class ListView<E> extends android.widget.ListView
     }
 
 
+    // ----------------------------------------------------------
+    /**
+     * Replaces the list of items that is managed by this list view. The list
+     * view shows the items in the new list and refreshes itself when its
+     * structure is changed, as described in {@link #getList()}, and stops
+     * observing the old list.
+     * <p>
+     * Pass a {@link ConcurrentObservableList} to be able to change the list
+     * on any thread. Its iterators and sublists are read-only views of the
+     * list as it was when they were created, and each insertion, removal,
+     * or replacement copies the list, so it is best suited to lists that
+     * are read far more often than they are changed.
+     * </p>
+     *
+     * @param newList the list of items to manage
+     */
+    public void setList(ObservableList<E> newList)
+    {
+        list.removeObserver(observer);
+        attach(newList);
+    }
+
+
     // ----------------------------------------------------------
     /**
      * Adds an item to the list view.
@@ -226,6 +261,41 @@ public class ListView<E> extends android.widget.ListView
     }
 
 
+    // ----------------------------------------------------------
+    /**
+     * Replaces the items in the list view with the items in the specified
+     * collection. Only the rows for items that were actually inserted,
+     * removed, moved, or replaced are updated, so this is the cheapest way
+     * to refresh the list view from a data source. Items are compared with
+     * {@code equals}; see
+     * {@link ObservableList#setAll(Collection, ObservableList.KeyExtractor)}
+     * to match them by key instead.
+     *
+     * @param items the new items for the list view
+     */
+    public void setAll(Collection<? extends E> items)
+    {
+        list.setAll(items);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Replaces the items in the list view with the items in the specified
+     * collection, matching old and new items by the keys that {@code keys}
+     * extracts from them. See
+     * {@link ObservableList#setAll(Collection, ObservableList.KeyExtractor)}.
+     *
+     * @param items the new items for the list view
+     * @param keys extracts the key that identifies each item
+     */
+    public void setAll(Collection<? extends E> items,
+            ObservableList.KeyExtractor<? super E> keys)
+    {
+        list.setAll(items, keys);
+    }
+
+
     // ----------------------------------------------------------
     /**
      * Gets the currently selected item in the list view.
@@ -286,10 +356,64 @@ public class ListView<E> extends android.widget.ListView
             }
         }
 
+        attach(list);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Makes the specified list the one that this list view shows, and starts
+     * observing it.
+     *
+     * @param newList the list to show
+     */
+    private void attach(ObservableList<E> newList)
+    {
+        list = newList;
+
         adapter = new DecoratingAdapter<E>(getContext(), 0, list);
         setAdapter(adapter);
 
-        list.addObserver(observer);
+        // A concurrent list can be changed by background threads, so its
+        // changes are delivered to the observer on the main thread, since it
+        // touches the adapter. Until then, the adapter keeps showing the
+        // snapshot it took at the last delivery, so the adapter view never
+        // sees the list change unannounced.
+        if (list instanceof ConcurrentObservableList)
+        {
+            list.setNotifyingOnMainThread(true);
+        }
+
+        list.addWeakObserver(observer);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Updates the visible rows that show items in the specified range from
+     * the items currently in the list, without laying out the rest of the
+     * list view again. Rows that are not visible are bound when they scroll
+     * into view, as usual.
+     *
+     * @param start the index of the first item to update
+     * @param count the number of items to update
+     */
+    private void rebind(int start, int count)
+    {
+        int firstPosition = getFirstVisiblePosition() - getHeaderViewsCount();
+        int end = start + count;
+
+        for (int i = 0; i < getChildCount(); i++)
+        {
+            int position = firstPosition + i;
+
+            if (position >= start && position < end
+                    && position < adapter.getCount())
+            {
+                View child = getChildAt(i);
+                adapter.getView(position, child, this);
+            }
+        }
     }
 
 
@@ -298,7 +422,9 @@ public class ListView<E> extends android.widget.ListView
     // ----------------------------------------------------------
     /**
      * The observer is pulled into a separate object so that we do not expose
-     * the changeWasObserved method in the class's public interface.
+     * the changeWasObserved method in the class's public interface. The list
+     * only holds it weakly, so this field is what keeps it alive; a list that
+     * outlives the widget does not keep the widget alive.
      */
     private final Object observer = new Object()
     {
@@ -314,5 +440,32 @@ public class ListView<E> extends android.widget.ListView
         {
             refresh();
         }
+
+
+        // ----------------------------------------------------------
+        /**
+         * Handles notifications about a change to the list inside this list
+         * view. Replaced items only need their rows bound again; any other
+         * change moves rows, so the list view is refreshed. So is a
+         * replacement that arrives after the list has changed size on
+         * another thread, since the list view must be told about that.
+         *
+         * @param theList the list that was changed
+         * @param change the change that was made
+         */
+        @SuppressWarnings("unused")
+        public void changeWasObserved(
+                ObservableList<E> theList, ListChange change)
+        {
+            if (change.getType() == ListChange.Type.CHANGED
+                    && adapter.refreshItems())
+            {
+                rebind(change.getStart(), change.getCount());
+            }
+            else
+            {
+                refresh();
+            }
+        }
     };
 }